@@ -0,0 +1,149 @@
+package org.povworld.sbb;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Problem instances used as benchmark fixtures.
+ * <p>
+ * An instance is named like its file in the instance directory without the {@code .json}
+ * extension. The directory is {@code problem_instances} unless the system property
+ * {@code sbb.instances} says otherwise. A suffix {@code _xN} names a synthetic instance with
+ * {@code N} copies of each service intention and its route. The copies share the resources with
+ * the original and each copy is shifted by {@link #COPY_SHIFT} in time, so every resource is
+ * occupied {@code N} times as often. Copies running at the same times as the original would
+ * make the initial state infeasible. The shift keeps it feasible for the copies of
+ * {@code 02_a_little_less_dummy} up to {@code _x4}, larger copies only suit the parser.
+ */
+final class BenchmarkInstances {
+
+	static final int COPY_SHIFT = TimeUtil.parseTime("03:00:00");
+
+	private static final String[] TIME_FIELDS = { "entry_earliest", "entry_latest", "exit_earliest", "exit_latest" };
+
+	private static final Pattern SCALED = Pattern.compile("(.*)_x(\\d+)");
+
+	private static final Map<String, File> scaledFiles = new HashMap<>();
+
+	private BenchmarkInstances() {}
+
+	static synchronized File getFile(String instance) throws IOException {
+		Matcher matcher = SCALED.matcher(instance);
+		if (!matcher.matches()) {
+			File file = new File(System.getProperty("sbb.instances", "problem_instances"), instance + ".json");
+			if (!file.isFile()) {
+				throw new IOException("Instance not found: " + file.getAbsolutePath());
+			}
+			return file;
+		}
+		File file = scaledFiles.get(instance);
+		if (file == null) {
+			file = writeScaled(getFile(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+			scaledFiles.put(instance, file);
+		}
+		return file;
+	}
+
+	static Problem loadProblem(String instance) throws IOException {
+		return new Problem(InputParser.parseScenario(getFile(instance)));
+	}
+
+	/**
+	 * Creates the initial state of the given instance like the solver does before its search.
+	 */
+	static State createInitialState(Problem problem) {
+		ConnectionRepository connections = ConnectionRepository.create(problem);
+		State state = new SbbExecutor(problem, 0, connections, new ConflictBooster()).createInitialState();
+		if (state == null) {
+			throw new IllegalStateException("Initial state of " + problem.getScenario().getLabel() + " is infeasible");
+		}
+		return state;
+	}
+
+	private static File writeScaled(File input, int copies) throws IOException {
+		JsonObject scaled = read(input);
+		JsonArray intentions = new JsonArray();
+		JsonArray routes = new JsonArray();
+		for (int copy = 0; copy < copies; ++copy) {
+			// Parse again for every copy, the elements are modified in place.
+			JsonObject original = read(input);
+			for (JsonElement intention : original.getAsJsonArray("service_intentions")) {
+				intentions.add(renameIntention(intention.getAsJsonObject(), copy));
+			}
+			for (JsonElement route : original.getAsJsonArray("routes")) {
+				routes.add(rename(route.getAsJsonObject(), "id", copy));
+			}
+		}
+		scaled.add("service_intentions", intentions);
+		scaled.add("routes", routes);
+
+		File file = File.createTempFile(input.getName().replace(".json", "") + "_x" + copies + "_", ".json");
+		file.deleteOnExit();
+		try (Writer writer = new BufferedWriter(new FileWriter(file))) {
+			new Gson().toJson(scaled, writer);
+		}
+		return file;
+	}
+
+	private static JsonObject renameIntention(JsonObject intention, int copy) {
+		if (copy == 0) {
+			return intention;
+		}
+		rename(intention, "id", copy);
+		rename(intention, "route", copy);
+		JsonElement requirements = intention.get("section_requirements");
+		if (requirements == null || !requirements.isJsonArray()) {
+			return intention;
+		}
+		for (JsonElement requirement : requirements.getAsJsonArray()) {
+			shiftTimes(requirement.getAsJsonObject(), copy * COPY_SHIFT);
+			JsonElement connections = requirement.getAsJsonObject().get("connections");
+			if (connections == null || !connections.isJsonArray()) {
+				continue;
+			}
+			for (JsonElement connection : connections.getAsJsonArray()) {
+				rename(connection.getAsJsonObject(), "onto_service_intention", copy);
+			}
+		}
+		return intention;
+	}
+
+	private static JsonObject rename(JsonObject object, String field, int copy) {
+		if (copy > 0) {
+			object.addProperty(field, object.get(field).getAsString() + "_" + copy);
+		}
+		return object;
+	}
+
+	private static void shiftTimes(JsonObject requirement, int shift) {
+		for (String field : TIME_FIELDS) {
+			JsonElement time = requirement.get(field);
+			if (time != null && time.isJsonPrimitive()) {
+				requirement.addProperty(field, TimeUtil.unparseTime(TimeUtil.parseTime(time.getAsString()) + shift));
+			}
+		}
+	}
+
+	private static JsonObject read(File file) throws IOException {
+		try (Reader reader = new BufferedReader(new FileReader(file))) {
+			return new JsonParser().parse(reader).getAsJsonObject();
+		}
+	}
+
+}
@@ -0,0 +1,80 @@
+package org.povworld.sbb;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.povworld.collection.common.Interval;
+
+/**
+ * {@link DensityMap} on synthetic trapezoids spread over a few hours. Resource plans of the
+ * instances hold around ten trapezoids, the larger sizes show how the maximum search scales.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DensityMapBenchmark {
+
+	@Param({ "10", "100", "1000" })
+	public int trapezoids;
+
+	private String[] ids;
+	private Interval[] rampups;
+	private Interval[] rampdowns;
+	private double[] densities;
+
+	private DensityMap densityMap;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(42);
+		ids = new String[trapezoids];
+		rampups = new Interval[trapezoids];
+		rampdowns = new Interval[trapezoids];
+		densities = new double[trapezoids];
+		for (int i = 0; i < trapezoids; ++i) {
+			int start = random.nextInt(4 * 3600);
+			int rampupEnd = start + random.nextInt(300);
+			int rampdownStart = rampupEnd + 60 + random.nextInt(600);
+			int end = rampdownStart + random.nextInt(300);
+			ids[i] = "intention" + i;
+			rampups[i] = new Interval(start, rampupEnd);
+			rampdowns[i] = new Interval(rampdownStart, end);
+			densities[i] = 0.1 + 0.9 * random.nextDouble();
+		}
+		densityMap = build();
+	}
+
+	private DensityMap build() {
+		DensityMap result = new DensityMap();
+		for (int i = 0; i < trapezoids; ++i) {
+			result.addTrapezoid(ids[i], rampups[i], rampdowns[i], densities[i]);
+		}
+		return result;
+	}
+
+	@Benchmark
+	public DensityMap.Max calculateMax() {
+		return densityMap.getMaxDensityWithInterval(2);
+	}
+
+	/** What a resource plan does for every recalculation of its maximum. */
+	@Benchmark
+	public DensityMap.Max buildAndCalculateMax() {
+		return build().getMaxDensityWithInterval(2);
+	}
+
+}
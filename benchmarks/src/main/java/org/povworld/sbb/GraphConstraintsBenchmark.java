@@ -0,0 +1,121 @@
+package org.povworld.sbb;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.povworld.collection.mutable.ArrayList;
+import org.povworld.sbb.GraphResourceOccupations.ResourceOccupation;
+import org.povworld.sbb.RouteGraph.Edge;
+
+/**
+ * Time propagation of the graph constraints of all intentions in the initial state of an
+ * instance. The restricting benchmarks apply a delay at the first edge (respectively the last
+ * edge) of each graph, so the change propagates through the whole graph. They work on copies,
+ * which are cheap compared to the propagation. Like the solver, they use the variants which
+ * report into reused holders instead of allocating results. The scheduling benchmarks compare the
+ * minimum penalty path search with the enumeration of all paths it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GraphConstraintsBenchmark {
+
+	private static final int DELAY = 60;
+
+	@Param({ "01_dummy", "02_a_little_less_dummy", "02_a_little_less_dummy_x4" })
+	public String instance;
+
+	private GraphConstraints[] constraints;
+	private ResourceOccupation[][] occupations;
+	// Reused like the solver does, see SbbExecutor.StateChanger.
+	private final BitSet changedNodes = new BitSet();
+
+	@Setup
+	public void setUp() throws IOException {
+		Problem problem = BenchmarkInstances.loadProblem(instance);
+		org.povworld.sbb.State state = BenchmarkInstances.createInitialState(problem);
+		constraints = new GraphConstraints[problem.getIntentionCount()];
+		occupations = new ResourceOccupation[problem.getIntentionCount()][];
+		for (int intention = 0; intention < constraints.length; ++intention) {
+			constraints[intention] = state.graphConstraints.get(intention);
+			GraphResourceOccupations gro = problem.getResourceOccupations(intention);
+			ArrayList<ResourceOccupation> list = new ArrayList<>();
+			for (String resource : gro.getOccupiedResources()) {
+				for (ResourceOccupation occupation : gro.getOccupations(resource)) {
+					list.push(occupation);
+				}
+			}
+			occupations[intention] = new ResourceOccupation[list.size()];
+			for (int i = 0; i < list.size(); ++i) {
+				occupations[intention][i] = list.get(i);
+			}
+		}
+	}
+
+	@Benchmark
+	public void getOccupationTimes(Blackhole blackhole) {
+		MutableOccupationTimes times = new MutableOccupationTimes();
+		for (int intention = 0; intention < constraints.length; ++intention) {
+			GraphConstraints c = constraints[intention];
+			for (ResourceOccupation o : occupations[intention]) {
+				blackhole.consume(c.getOccupationTimes(o, times));
+				blackhole.consume(times.entryEarliest);
+			}
+		}
+	}
+
+	@Benchmark
+	public void increaseEarliestEntry(Blackhole blackhole) {
+		for (GraphConstraints c : constraints) {
+			GraphConstraints copy = c.copy();
+			Edge first = copy.getGraph().getSource().getNext().getFirst();
+			changedNodes.clear();
+			copy.increaseEarliestEntry(first, copy.getEntryEarliest(first) + DELAY, changedNodes);
+			blackhole.consume(copy);
+		}
+		blackhole.consume(changedNodes);
+	}
+
+	@Benchmark
+	public void decreaseLatestExit(Blackhole blackhole) {
+		for (GraphConstraints c : constraints) {
+			GraphConstraints copy = c.copy();
+			Edge last = copy.getGraph().getSink().getPrevious().getFirst();
+			changedNodes.clear();
+			copy.decreaseLatestExit(last, copy.getExitLatest(last) - DELAY, changedNodes);
+			blackhole.consume(copy);
+		}
+		blackhole.consume(changedNodes);
+	}
+
+	@Benchmark
+	public void scheduleMinimumPenaltyPath(Blackhole blackhole) {
+		for (GraphConstraints c : constraints) {
+			blackhole.consume(c.scheduleMinimumPenaltyPath());
+		}
+	}
+
+	@Benchmark
+	public void scheduleMinimumPenaltyPathByEnumeration(Blackhole blackhole) {
+		for (GraphConstraints c : constraints) {
+			blackhole.consume(c.scheduleMinimumPenaltyPathByEnumeration());
+		}
+	}
+
+}
@@ -0,0 +1,46 @@
+package org.povworld.sbb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.povworld.sbb.Input.Scenario;
+
+/**
+ * Parsing the JSON input of an instance, including reading the file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InputParserBenchmark {
+
+	@Param({ "01_dummy", "02_a_little_less_dummy", "02_a_little_less_dummy_x8" })
+	public String instance;
+
+	private File file;
+
+	@Setup
+	public void setUp() throws IOException {
+		file = BenchmarkInstances.getFile(instance);
+	}
+
+	@Benchmark
+	public Scenario parseScenario() throws IOException {
+		return InputParser.parseScenario(file);
+	}
+
+}
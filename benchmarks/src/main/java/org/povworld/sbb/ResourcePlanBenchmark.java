@@ -0,0 +1,53 @@
+package org.povworld.sbb;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.povworld.sbb.ResourcePlan.ConflictIntervalSelection;
+
+/**
+ * Maximum density search of all resource plans in the initial state of an instance. The maximum
+ * is cached by the plan, every invocation works on fresh copies to measure the calculation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResourcePlanBenchmark {
+
+	@Param({ "01_dummy", "02_a_little_less_dummy", "02_a_little_less_dummy_x4" })
+	public String instance;
+
+	private ResourcePlan[] plans;
+
+	@Setup
+	public void setUp() throws IOException {
+		org.povworld.sbb.State state = BenchmarkInstances.createInitialState(BenchmarkInstances.loadProblem(instance));
+		plans = new ResourcePlan[state.resourcePlans.size()];
+		for (int i = 0; i < plans.length; ++i) {
+			plans[i] = state.resourcePlans.get(i);
+		}
+	}
+
+	@Benchmark
+	public void calculateMax(Blackhole blackhole) {
+		for (ResourcePlan plan : plans) {
+			blackhole.consume(plan.copy().getMaxDensityRange(ConflictIntervalSelection.Interval));
+		}
+	}
+
+}
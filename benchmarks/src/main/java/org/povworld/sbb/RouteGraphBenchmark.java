@@ -0,0 +1,61 @@
+package org.povworld.sbb;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.povworld.sbb.Input.Route;
+import org.povworld.sbb.Input.Scenario;
+
+/**
+ * Building the route graphs of an instance and enumerating all their paths.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RouteGraphBenchmark {
+
+	@Param({ "01_dummy", "02_a_little_less_dummy" })
+	public String instance;
+
+	private Scenario scenario;
+	private RouteGraph[] graphs;
+
+	@Setup
+	public void setUp() throws IOException {
+		scenario = InputParser.parseScenario(BenchmarkInstances.getFile(instance));
+		graphs = new RouteGraph[scenario.getRoutesCount()];
+		for (int i = 0; i < graphs.length; ++i) {
+			graphs[i] = RouteGraph.build(scenario.getRoutes(i));
+		}
+	}
+
+	@Benchmark
+	public void build(Blackhole blackhole) {
+		for (Route route : scenario.getRoutesList()) {
+			blackhole.consume(RouteGraph.build(route));
+		}
+	}
+
+	@Benchmark
+	public void generatePaths(Blackhole blackhole) {
+		for (RouteGraph graph : graphs) {
+			blackhole.consume(graph.generatePaths());
+		}
+	}
+
+}
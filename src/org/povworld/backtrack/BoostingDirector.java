@@ -117,7 +117,7 @@ public class BoostingDirector<State, Conflict, Option> extends Director<State, C
 		List<Option> options = executor.getOptions(state, conflict);
 		Decision<State, Conflict, Option> decision = new Decision<>(state, conflict, options);
 		while(decision.hasNextOption()) {
-			State newState = executor.apply(state, decision.nextOption());
+			State newState = apply(state, decision.nextOption(), decisions.size());
 			if (newState != null) {
 				decisions.push(decision);
 				newState = tryApply(newState, hardConflicts, start + 1);
@@ -43,5 +43,10 @@ public class CountingExecutor<S,C,O> implements Executor<S,C,O> {
 		applyCalls++;
 		return delegate.apply(state, option);
 	}
+
+	@Override
+	public long getFingerprint(S state) {
+		return delegate.getFingerprint(state);
+	}
 	
 }
@@ -6,12 +6,20 @@ import java.util.logging.Logger;
 import javax.annotation.CheckForNull;
 
 import org.povworld.collection.List;
+import org.povworld.collection.Set;
 import org.povworld.collection.mutable.ArrayList;
+import org.povworld.collection.mutable.HashSet;
 
 public class Director<State, Conflict, Option> {
 	
 	private static final Logger logger = Logger.getLogger(Director.class.getSimpleName());
 
+	/** Maximum number of failed options for which nogoods are kept. */
+	private static final int NOGOOD_CAPACITY = 4096;
+
+	/** Number of fingerprints of failed states which are kept, a power of two. */
+	private static final int FAILED_STATES_CAPACITY = 1 << 14;
+
 	protected static final class Decision<State, Conflict, Option> {
 		public final State state;
 		public final Conflict conflict;
@@ -28,6 +36,10 @@ public class Director<State, Conflict, Option> {
 			return options.get(next++);
 		}
 
+		Option currentOption() {
+			return options.get(next - 1);
+		}
+
 		public boolean hasNextOption() {
 			return next < options.size();
 		}
@@ -37,12 +49,45 @@ public class Director<State, Conflict, Option> {
 	protected final Level loggingLevel;
 	protected final ArrayList<Decision<State, Conflict, Option>> decisions = new ArrayList<>();
 	protected int steps = 0;
+	private volatile boolean cancelled = false;
+	private final NogoodStore<Option> nogoods = new NogoodStore<>(NOGOOD_CAPACITY);
+	// States from which no solution can be reached. Shared by the members of a parallel search.
+	private TranspositionTable failedStates = new TranspositionTable(FAILED_STATES_CAPACITY);
+	private int transpositions = 0;
+	@CheckForNull
+	SearchMetrics metrics = null;
 
 	public Director(Executor<State, Conflict, Option> executor, Level loggingLevel) {
 		this.executor = executor;
 		this.loggingLevel = loggingLevel;
 	}
 	
+	/**
+	 * Requests a running {@link #work(Object)} to stop. It returns null at the next step.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	TranspositionTable getFailedStates() {
+		return failedStates;
+	}
+
+	/**
+	 * Records the failed states in the given table instead of an own one, so that the directors of
+	 * a parallel search share them. Must be called before {@link #work(Object)}.
+	 */
+	void setFailedStates(TranspositionTable failedStates) {
+		this.failedStates = failedStates;
+	}
+
+	/**
+	 * Records backtracks, depth and the options tried per decision in the given metrics.
+	 */
+	public void setMetrics(@CheckForNull SearchMetrics metrics) {
+		this.metrics = metrics;
+	}
+
 	private void step() {
 		steps++;
 		if (steps % 100 == 0) {
@@ -65,29 +110,49 @@ public class Director<State, Conflict, Option> {
 		decisions.push(new Decision<>(initialState, initialConflict, initialOptions));
 
 		for(;;) {
+			if (cancelled) {
+				logger.log(loggingLevel, "Cancelled after {0} steps.", steps);
+				return null;
+			}
 			step();
 			Decision<State, Conflict, Option> decision = decisions.peek();
 			State newState = null;
+			int tried = 0;
 			while (decision.next < decision.options.size()) {
+				tried++;
 				Option option = decision.nextOption();
 				logger.log(loggingLevel, decisions.size() + "/Applying ConflictSchedule " + option);
-				newState = executor.apply(decision.state, option);
+				newState = apply(decision.state, option, decisions.size() - 1);
 				if (newState != null) {
 					break;
 				}
 				logger.log(loggingLevel, decisions.size() + "/Failed!");
 			}
+			if (metrics != null) {
+				metrics.recordOptionsTried(tried);
+			}
 
 			if (newState != null) {
 				Conflict conflict = chooseNextConflict(newState);
 				if (conflict == null) {
 					// Success!
-					logger.log(loggingLevel, "Solved in {0} steps.", steps);
+					logger.log(loggingLevel, "Solved in {0} steps, {1} options pruned by nogoods, {2} by transpositions.",
+							new Object[] { steps, nogoods.getHits(), transpositions });
 					return newState;
 				}
 				processConflict(newState, conflict);
+				if (metrics != null) {
+					metrics.recordDepth(decisions.size());
+				}
 			} else {
 				// Dead end! Need to backtrack.
+				long fingerprint = executor.getFingerprint(decisions.peek().state);
+				if (fingerprint != 0) {
+					failedStates.add(fingerprint);
+				}
+				if (metrics != null) {
+					metrics.recordBacktrack();
+				}
 				backtrack();
 				if (decisions.isEmpty()) {
 					// Failed to find a success state!
@@ -101,6 +166,62 @@ public class Director<State, Conflict, Option> {
 		}
 	}
 	
+	/**
+	 * Applies the option unless a nogood shows that it fails. The state must be the one reached by
+	 * the current options of the lowest {@code depth} decisions. When an option fails for the
+	 * second time, the current options of the shortest prefix of these decisions on which it still
+	 * fails are recorded as a nogood. Finding the prefix costs a few extra applies, which are only
+	 * spent on options that are tried again and again.
+	 * <p>
+	 * Different option orders often lead to the same state. If the new state is one whose options
+	 * have all been exhausted before, the option fails as well.
+	 */
+	@CheckForNull
+	protected State apply(State state, Option option, int depth) {
+		boolean failedBefore = nogoods.contains(option);
+		if (failedBefore && nogoods.isNogood(option, getAppliedOptions(depth))) {
+			return null;
+		}
+		State newState = executor.apply(state, option);
+		if (newState == null) {
+			if (failedBefore) {
+				nogoods.add(option, getAppliedOptions(findFailingPrefix(option, depth)));
+			} else {
+				nogoods.markFailed(option);
+			}
+		} else if (failedStates.contains(executor.getFingerprint(newState))) {
+			transpositions++;
+			return null;
+		}
+		return newState;
+	}
+
+	/**
+	 * Binary search for the lowest decision whose state the option fails on, the option is known
+	 * to fail on the state reached by the lowest {@code depth} decisions.
+	 */
+	private int findFailingPrefix(Option option, int depth) {
+		int low = 0;
+		int high = depth;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (executor.apply(decisions.get(mid).state, option) == null) {
+				high = mid;
+			} else {
+				low = mid + 1;
+			}
+		}
+		return high;
+	}
+
+	private Set<Option> getAppliedOptions(int depth) {
+		HashSet<Option> result = new HashSet<>(depth);
+		for (int i = 0; i < depth; ++i) {
+			result.add(decisions.get(i).currentOption());
+		}
+		return result;
+	}
+
 	@CheckForNull
 	protected Conflict chooseNextConflict(State state) {
 		return executor.getWorstConflict(state);
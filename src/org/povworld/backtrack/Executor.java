@@ -12,4 +12,11 @@ public interface Executor<State, Conflict, Option> {
 
 	@CheckForNull
 	public State apply(State state, Option option);
+
+	/**
+	 * @return hash of the state which is equal for equal states, or 0 if not supported
+	 */
+	public default long getFingerprint(State state) {
+		return 0;
+	}
 }
@@ -61,7 +61,7 @@ public class HardCollectingDirector<State, Conflict, Option> extends Director<St
 		List<Option> options = executor.getOptions(state, conflict);
 		Decision<State, Conflict, Option> decision = new Decision<>(state, conflict, options);
 		while(decision.hasNextOption()) {
-			State newState = executor.apply(state, decision.nextOption());
+			State newState = apply(state, decision.nextOption(), decisions.size());
 			if (newState != null) {
 				decisions.push(decision);
 				newState = tryApply(newState, hardConflicts, start + 1);
@@ -0,0 +1,93 @@
+package org.povworld.backtrack;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of non-negative values in the style of HdrHistogram. Values below
+ * {@code SUB_BUCKET_COUNT} are counted exactly, larger values in {@code SUB_BUCKET_COUNT} buckets
+ * per power of two, so the relative error of a percentile is at most 1 / {@code SUB_BUCKET_COUNT}.
+ * <p>
+ * Recording does not allocate and is safe to call from several threads.
+ */
+public final class Histogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts.incrementAndGet(indexOf(value));
+		count.increment();
+		sum.add(value);
+		long currentMax = max.get();
+		while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+			currentMax = max.get();
+		}
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public double getMean() {
+		long n = count.sum();
+		return (n == 0) ? 0 : (double) sum.sum() / n;
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @return the largest value of the bucket which contains the given percentile, at most the
+	 *         maximum recorded value
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long n = count.sum();
+		if (n == 0) {
+			return 0;
+		}
+		long target = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+		long seen = 0;
+		for (int index = 0; index < BUCKET_COUNT; ++index) {
+			seen += counts.get(index);
+			if (seen >= target) {
+				return Math.min(highestValueAt(index), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	static int indexOf(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+	}
+
+	static long lowestValueAt(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+		int subBucket = index % SUB_BUCKET_COUNT;
+		return (long) (SUB_BUCKET_COUNT + subBucket) << (exponent - SUB_BUCKET_BITS);
+	}
+
+	private static long highestValueAt(int index) {
+		return (index == BUCKET_COUNT - 1) ? Long.MAX_VALUE : lowestValueAt(index + 1) - 1;
+	}
+
+}
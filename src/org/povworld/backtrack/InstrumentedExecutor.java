@@ -0,0 +1,47 @@
+package org.povworld.backtrack;
+
+import org.povworld.collection.List;
+
+/**
+ * Records the latencies of the calls to the delegate in the {@link SearchMetrics}.
+ */
+public class InstrumentedExecutor<S, C, O> implements Executor<S, C, O> {
+
+	private final Executor<S, C, O> delegate;
+	private final SearchMetrics metrics;
+
+	public InstrumentedExecutor(Executor<S, C, O> delegate, SearchMetrics metrics) {
+		this.delegate = delegate;
+		this.metrics = metrics;
+	}
+
+	@Override
+	public C getWorstConflict(S state) {
+		long start = System.nanoTime();
+		C result = delegate.getWorstConflict(state);
+		metrics.worstConflictLatency.record(System.nanoTime() - start);
+		return result;
+	}
+
+	@Override
+	public List<O> getOptions(S state, C conflict) {
+		long start = System.nanoTime();
+		List<O> result = delegate.getOptions(state, conflict);
+		metrics.optionsLatency.record(System.nanoTime() - start);
+		return result;
+	}
+
+	@Override
+	public S apply(S state, O option) {
+		long start = System.nanoTime();
+		S result = delegate.apply(state, option);
+		metrics.applyLatency.record(System.nanoTime() - start);
+		return result;
+	}
+
+	@Override
+	public long getFingerprint(S state) {
+		return delegate.getFingerprint(state);
+	}
+
+}
@@ -0,0 +1,101 @@
+package org.povworld.backtrack;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+import org.povworld.collection.Set;
+
+/**
+ * Bounded store of nogoods, i.e. of option sets which can not be applied together.
+ * <p>
+ * A nogood is recorded when applying an option fails on the state reached by a set of previously
+ * applied options. Applying options only ever restricts the state further, independent of their
+ * order. So the option fails as well on every state reached by a superset of these options. The
+ * nogoods are indexed by the failed option and the least recently failed options are evicted once
+ * there are more than {@code capacity} of them.
+ */
+final class NogoodStore<Option> {
+
+	// Nogoods kept per failed option, older ones are dropped first.
+	private static final int MAX_NOGOODS_PER_OPTION = 8;
+
+	private final LinkedHashMap<Option, ArrayDeque<Set<Option>>> nogoods;
+	private int hits = 0;
+
+	NogoodStore(int capacity) {
+		this.nogoods = new LinkedHashMap<Option, ArrayDeque<Set<Option>>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Entry<Option, ArrayDeque<Set<Option>>> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * @return whether the option has failed before
+	 */
+	boolean contains(Option option) {
+		return nogoods.containsKey(option);
+	}
+
+	/**
+	 * @return whether applying the option on the state reached by the applied options is known to fail
+	 */
+	boolean isNogood(Option option, Set<Option> appliedOptions) {
+		ArrayDeque<Set<Option>> candidates = nogoods.get(option);
+		if (candidates == null) {
+			return false;
+		}
+		for (Set<Option> nogood : candidates) {
+			if (containsAll(appliedOptions, nogood)) {
+				hits++;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Records that applying the option failed, without a nogood.
+	 */
+	void markFailed(Option option) {
+		if (!nogoods.containsKey(option)) {
+			nogoods.put(option, new ArrayDeque<>(MAX_NOGOODS_PER_OPTION));
+		}
+	}
+
+	/**
+	 * Records that applying the option failed on the state reached by the applied options.
+	 */
+	void add(Option option, Set<Option> appliedOptions) {
+		markFailed(option);
+		ArrayDeque<Set<Option>> list = nogoods.get(option);
+		if (list.size() == MAX_NOGOODS_PER_OPTION) {
+			list.removeFirst();
+		}
+		list.addLast(appliedOptions);
+	}
+
+	/**
+	 * @return number of options which have been identified as nogood
+	 */
+	int getHits() {
+		return hits;
+	}
+
+	private static <T> boolean containsAll(Set<T> set, Set<T> subset) {
+		if (subset.size() > set.size()) {
+			return false;
+		}
+		for (T element : subset) {
+			if (!set.contains(element)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
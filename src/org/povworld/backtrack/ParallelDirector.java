@@ -0,0 +1,171 @@
+package org.povworld.backtrack;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+
+import org.povworld.collection.List;
+import org.povworld.collection.mutable.ArrayList;
+
+/**
+ * Searches the decision tree with a fork-join pool.
+ * <p>
+ * A task above {@code splitDepth} splits its decision while there are idle workers: every option
+ * becomes a child task which can be stolen and which applies the option itself. Otherwise, and at
+ * the split depth, the subtree is searched by a sequential director obtained from the factory.
+ * Every task creates its own director, so the factory must hand out directors which do not share
+ * any mutable state. Only the fingerprints of failed states are shared between the tasks.
+ * <p>
+ * The results of the siblings are joined in option order and the first solution wins. As soon as
+ * a solution is known, all siblings with a higher option index are cancelled. Which decisions are
+ * split and which failed states a task can prune by depend on the scheduling of the tasks, so
+ * the result may differ between runs.
+ */
+public class ParallelDirector<State, Conflict, Option> extends Director<State, Conflict, Option> {
+
+	private static final Logger logger = Logger.getLogger(ParallelDirector.class.getSimpleName());
+
+	private final Supplier<Director<State, Conflict, Option>> directorFactory;
+	private final int splitDepth;
+	private final int parallelism;
+
+	@CheckForNull
+	private volatile SearchTask root = null;
+
+	/**
+	 * @param executor only used to check the initial state, the tasks use the executors of their
+	 *        directors
+	 */
+	public ParallelDirector(Executor<State, Conflict, Option> executor,
+			Supplier<Director<State, Conflict, Option>> directorFactory, int splitDepth, int parallelism,
+			Level loggingLevel) {
+		super(executor, loggingLevel);
+		this.directorFactory = directorFactory;
+		this.splitDepth = splitDepth;
+		this.parallelism = parallelism;
+	}
+
+	@Override
+	public void cancel() {
+		super.cancel();
+		SearchTask task = root;
+		if (task != null) {
+			task.cancel();
+		}
+	}
+
+	@Override
+	@CheckForNull
+	public State work(State initialState) {
+		if (executor.getWorstConflict(initialState) == null) {
+			return initialState;
+		}
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			root = new SearchTask(initialState, null, 0);
+			State result = pool.invoke(root);
+			logger.log(loggingLevel, "Parallel search finished, solved: {0}", result != null);
+			return result;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private final class SearchTask extends RecursiveTask<State> {
+
+		private static final long serialVersionUID = 1L;
+
+		// The state of the parent task, or the initial state for the root task.
+		private final State parentState;
+		// The option to apply to the parent state, or null for the root task.
+		@CheckForNull
+		private final Option option;
+		private final int depth;
+
+		private volatile boolean cancelled = false;
+		@CheckForNull
+		private volatile Director<State, Conflict, Option> director = null;
+		@CheckForNull
+		private volatile List<SearchTask> children = null;
+
+		SearchTask(State parentState, @CheckForNull Option option, int depth) {
+			this.parentState = parentState;
+			this.option = option;
+			this.depth = depth;
+		}
+
+		void cancel() {
+			cancelled = true;
+			Director<State, Conflict, Option> d = director;
+			if (d != null) {
+				d.cancel();
+			}
+			List<SearchTask> c = children;
+			if (c != null) {
+				for (SearchTask child : c) {
+					child.cancel();
+				}
+			}
+		}
+
+		@Override
+		@CheckForNull
+		protected State compute() {
+			Director<State, Conflict, Option> d = directorFactory.get();
+			d.setFailedStates(getFailedStates());
+			d.setMetrics(metrics);
+			director = d;
+			if (cancelled) {
+				return null;
+			}
+			State state = (option == null) ? parentState : d.executor.apply(parentState, option);
+			if (state == null) {
+				return null;
+			}
+			if (depth >= splitDepth || getSurplusQueuedTaskCount() > 0) {
+				return d.work(state);
+			}
+			return split(d.executor, state);
+		}
+
+		@CheckForNull
+		private State split(Executor<State, Conflict, Option> executor, State state) {
+			Conflict conflict = executor.getWorstConflict(state);
+			if (conflict == null) {
+				return state;
+			}
+			ArrayList<SearchTask> tasks = new ArrayList<>();
+			for (Option option : executor.getOptions(state, conflict)) {
+				tasks.push(new SearchTask(state, option, depth + 1));
+			}
+			children = tasks;
+			if (cancelled) {
+				return null;
+			}
+			// Fork in reverse so the first option is the first to be picked up by this worker.
+			for (int i = tasks.size() - 1; i >= 0; --i) {
+				tasks.get(i).fork();
+			}
+			State result = null;
+			for (int i = 0; i < tasks.size(); ++i) {
+				SearchTask task = tasks.get(i);
+				if (result != null) {
+					task.join();
+					continue;
+				}
+				result = task.join();
+				if (result != null) {
+					for (int j = i + 1; j < tasks.size(); ++j) {
+						tasks.get(j).cancel();
+					}
+				}
+			}
+			return result;
+		}
+	}
+
+}
@@ -0,0 +1,96 @@
+package org.povworld.backtrack;
+
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+
+import org.povworld.collection.List;
+import org.povworld.collection.mutable.HashMap;
+
+/**
+ * Races several directors against each other, each on its own thread. The first solution found
+ * is returned and all other directors are cancelled.
+ * <p>
+ * The members must not share any mutable state, i.e. each needs its own {@link Executor} (and
+ * {@link Booster}). The initial state is shared, so states must be safe to read concurrently. The
+ * members share the fingerprints of the states they found to fail.
+ */
+public class PortfolioDirector<State, Conflict, Option> extends Director<State, Conflict, Option> {
+
+	private static final Logger logger = Logger.getLogger(PortfolioDirector.class.getSimpleName());
+
+	private final List<Director<State, Conflict, Option>> members;
+
+	public PortfolioDirector(List<Director<State, Conflict, Option>> members, Level loggingLevel) {
+		// The first member's executor is only used to check the initial state.
+		super(members.getFirst().executor, loggingLevel);
+		this.members = members;
+		for (Director<State, Conflict, Option> member : members) {
+			member.setFailedStates(getFailedStates());
+		}
+	}
+
+	@Override
+	public void setMetrics(@CheckForNull SearchMetrics metrics) {
+		super.setMetrics(metrics);
+		for (Director<State, Conflict, Option> member : members) {
+			member.setMetrics(metrics);
+		}
+	}
+
+	@Override
+	public void cancel() {
+		super.cancel();
+		for (Director<State, Conflict, Option> member : members) {
+			member.cancel();
+		}
+	}
+
+	@Override
+	@CheckForNull
+	public State work(State initialState) {
+		if (executor.getWorstConflict(initialState) == null) {
+			return initialState;
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(members.size());
+		CompletionService<State> completion = new ExecutorCompletionService<>(pool);
+		HashMap<Future<State>, Director<State, Conflict, Option>> running = new HashMap<>();
+		try {
+			for (Director<State, Conflict, Option> member : members) {
+				running.put(completion.submit(() -> member.work(initialState)), member);
+			}
+			for (int i = 0; i < members.size(); ++i) {
+				Future<State> future = completion.take();
+				String name = running.get(future).getClass().getSimpleName();
+				State result;
+				try {
+					result = future.get();
+				} catch (ExecutionException e) {
+					logger.log(Level.WARNING, name + " failed", e.getCause());
+					continue;
+				}
+				if (result != null) {
+					logger.log(Level.INFO, "Solved by {0}.", name);
+					return result;
+				}
+				logger.log(loggingLevel, "{0} found no solution.", name);
+			}
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} finally {
+			cancel();
+			pool.shutdownNow();
+		}
+	}
+
+}
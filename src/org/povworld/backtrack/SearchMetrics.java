@@ -0,0 +1,148 @@
+package org.povworld.backtrack;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of a search, shared by all directors and executors working on it.
+ * <p>
+ * The latencies of the {@link Executor} calls are recorded by an {@link InstrumentedExecutor}, the
+ * backtracks, depth and options tried per decision by the {@link Director}. Rescoring and popped
+ * restrictions are specific to the executor, which reports them itself. Latencies are recorded in
+ * nanoseconds. All methods are safe to call from several threads.
+ */
+public final class SearchMetrics implements SearchMetricsMBean {
+
+	private static final double NANOS_PER_MICRO = 1000.0;
+
+	final Histogram worstConflictLatency = new Histogram();
+	final Histogram optionsLatency = new Histogram();
+	final Histogram applyLatency = new Histogram();
+	private final Histogram rescoreLatency = new Histogram();
+	private final Histogram optionsTried = new Histogram();
+	private final LongAdder restrictionsPopped = new LongAdder();
+	private final LongAdder backtracks = new LongAdder();
+	private final AtomicInteger maxDepth = new AtomicInteger();
+
+	public void recordRescore(long nanos) {
+		rescoreLatency.record(nanos);
+	}
+
+	public void addRestrictionsPopped(int count) {
+		restrictionsPopped.add(count);
+	}
+
+	void recordBacktrack() {
+		backtracks.increment();
+	}
+
+	void recordDepth(int depth) {
+		int current = maxDepth.get();
+		while (depth > current && !maxDepth.compareAndSet(current, depth)) {
+			current = maxDepth.get();
+		}
+	}
+
+	void recordOptionsTried(int count) {
+		optionsTried.record(count);
+	}
+
+	@Override
+	public long getWorstConflictCalls() {
+		return worstConflictLatency.getCount();
+	}
+
+	@Override
+	public double getWorstConflictMeanMicros() {
+		return worstConflictLatency.getMean() / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public double getWorstConflictP99Micros() {
+		return worstConflictLatency.getValueAtPercentile(99) / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public long getOptionsCalls() {
+		return optionsLatency.getCount();
+	}
+
+	@Override
+	public double getOptionsMeanMicros() {
+		return optionsLatency.getMean() / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public double getOptionsP99Micros() {
+		return optionsLatency.getValueAtPercentile(99) / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public long getApplyCalls() {
+		return applyLatency.getCount();
+	}
+
+	@Override
+	public double getApplyMeanMicros() {
+		return applyLatency.getMean() / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public double getApplyP99Micros() {
+		return applyLatency.getValueAtPercentile(99) / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public long getRescoreCalls() {
+		return rescoreLatency.getCount();
+	}
+
+	@Override
+	public double getRescoreMeanMicros() {
+		return rescoreLatency.getMean() / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public double getRescoreP99Micros() {
+		return rescoreLatency.getValueAtPercentile(99) / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public long getRestrictionsPopped() {
+		return restrictionsPopped.sum();
+	}
+
+	@Override
+	public long getBacktracks() {
+		return backtracks.sum();
+	}
+
+	@Override
+	public int getMaxDepth() {
+		return maxDepth.get();
+	}
+
+	@Override
+	public double getMeanOptionsTried() {
+		return optionsTried.getMean();
+	}
+
+	@Override
+	public String getSummary() {
+		return "worstConflict " + format(worstConflictLatency) +
+				", options " + format(optionsLatency) +
+				", apply " + format(applyLatency) +
+				", rescore " + format(rescoreLatency) +
+				", restrictions=" + getRestrictionsPopped() +
+				", backtracks=" + getBacktracks() +
+				", maxDepth=" + getMaxDepth() +
+				", optionsTried=" + String.format("%.2f/%d", optionsTried.getMean(), optionsTried.getMax());
+	}
+
+	private static String format(Histogram latency) {
+		return String.format("n=%d mean=%.0fus p50=%.0fus p99=%.0fus max=%.0fus", latency.getCount(),
+				latency.getMean() / NANOS_PER_MICRO, latency.getValueAtPercentile(50) / NANOS_PER_MICRO,
+				latency.getValueAtPercentile(99) / NANOS_PER_MICRO, latency.getMax() / NANOS_PER_MICRO);
+	}
+
+}
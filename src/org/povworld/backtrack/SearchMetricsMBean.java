@@ -0,0 +1,42 @@
+package org.povworld.backtrack;
+
+/**
+ * JMX view of the {@link SearchMetrics}. Latencies are in microseconds.
+ */
+public interface SearchMetricsMBean {
+
+	public long getWorstConflictCalls();
+
+	public double getWorstConflictMeanMicros();
+
+	public double getWorstConflictP99Micros();
+
+	public long getOptionsCalls();
+
+	public double getOptionsMeanMicros();
+
+	public double getOptionsP99Micros();
+
+	public long getApplyCalls();
+
+	public double getApplyMeanMicros();
+
+	public double getApplyP99Micros();
+
+	public long getRescoreCalls();
+
+	public double getRescoreMeanMicros();
+
+	public double getRescoreP99Micros();
+
+	public long getRestrictionsPopped();
+
+	public long getBacktracks();
+
+	public int getMaxDepth();
+
+	public double getMeanOptionsTried();
+
+	public String getSummary();
+
+}
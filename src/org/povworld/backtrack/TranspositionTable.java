@@ -0,0 +1,39 @@
+package org.povworld.backtrack;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded set of state fingerprints which is safe to share between threads.
+ * <p>
+ * Each fingerprint has exactly one slot, given by its low bits, and a fingerprint replaces the one
+ * stored in its slot. So older entries are lost on collisions, but a fingerprint is never reported
+ * which has not been added.
+ */
+final class TranspositionTable {
+
+	private final AtomicLongArray slots;
+	private final int mask;
+
+	/**
+	 * @param capacity number of slots, must be a power of two
+	 */
+	TranspositionTable(int capacity) {
+		if (Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+		}
+		this.slots = new AtomicLongArray(capacity);
+		this.mask = capacity - 1;
+	}
+
+	/**
+	 * @param fingerprint non-zero fingerprint
+	 */
+	void add(long fingerprint) {
+		slots.set((int) fingerprint & mask, fingerprint);
+	}
+
+	boolean contains(long fingerprint) {
+		return fingerprint != 0 && slots.get((int) fingerprint & mask) == fingerprint;
+	}
+
+}
@@ -0,0 +1,69 @@
+package org.povworld.sbb;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Chunk ownership of the fixed size arrays with cheap copies.
+ * <p>
+ * The values are split into chunks which are shared between an array and its copies. A chunk is
+ * only cloned when it is written for the first time after a copy, so a copy followed by a few
+ * writes costs a few chunks instead of the whole array.
+ * <p>
+ * Copying does not write to the copied array, so that the arrays of a state can be copied by
+ * several threads at once. Instead, an array and all its copies share a generation which every
+ * copy increments. A chunk may only be written in place if this array created it in the current
+ * generation, older chunks may be shared with a copy.
+ */
+abstract class AbstractChunkedArray {
+
+	static final int CHUNK_BITS = 5;
+	static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private final int size;
+	private final AtomicLong generation;
+	/** Generation in which each chunk was created by this array. */
+	private final long[] chunkGenerations;
+
+	AbstractChunkedArray(int size) {
+		this.size = size;
+		this.generation = new AtomicLong();
+		// All chunks are created in the initial generation.
+		this.chunkGenerations = new long[getChunkCount()];
+	}
+
+	/**
+	 * Creates a copy of {@code original} which owns none of its chunks. Only the shared generation
+	 * of {@code original} is modified.
+	 */
+	AbstractChunkedArray(AbstractChunkedArray original) {
+		this.size = original.size;
+		this.generation = original.generation;
+		this.chunkGenerations = new long[getChunkCount()];
+		// Neither the original nor this copy own any chunk after this.
+		generation.incrementAndGet();
+	}
+
+	final int size() {
+		return size;
+	}
+
+	final int getChunkCount() {
+		return (size + CHUNK_MASK) >>> CHUNK_BITS;
+	}
+
+	/**
+	 * @return whether chunk {@code c} is not shared and may be written in place
+	 */
+	final boolean isOwned(int c) {
+		return chunkGenerations[c] == generation.get();
+	}
+
+	/**
+	 * Marks chunk {@code c} as owned after it has been replaced by a clone.
+	 */
+	final void setOwned(int c) {
+		chunkGenerations[c] = generation.get();
+	}
+
+}
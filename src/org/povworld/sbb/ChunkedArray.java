@@ -0,0 +1,50 @@
+package org.povworld.sbb;
+
+/**
+ * Fixed size object array with cheap copies, see {@link AbstractChunkedArray}.
+ */
+final class ChunkedArray<T> extends AbstractChunkedArray {
+
+	private final Object[][] chunks;
+
+	ChunkedArray(int size) {
+		super(size);
+		this.chunks = new Object[getChunkCount()][];
+		for (int c = 0; c < chunks.length; ++c) {
+			chunks[c] = new Object[CHUNK_SIZE];
+		}
+	}
+
+	private ChunkedArray(ChunkedArray<T> original) {
+		super(original);
+		this.chunks = original.chunks.clone();
+	}
+
+	@SuppressWarnings("unchecked")
+	T get(int index) {
+		return (T)chunks[index >>> CHUNK_BITS][index & CHUNK_MASK];
+	}
+
+	void set(int index, T value) {
+		int c = index >>> CHUNK_BITS;
+		Object[] chunk = chunks[c];
+		if (chunk[index & CHUNK_MASK] == value) {
+			return;
+		}
+		if (!isOwned(c)) {
+			chunk = chunk.clone();
+			chunks[c] = chunk;
+			setOwned(c);
+		}
+		chunk[index & CHUNK_MASK] = value;
+	}
+
+	/**
+	 * Creates a copy sharing all chunks. Both this array and the copy clone a chunk before
+	 * writing it the next time.
+	 */
+	ChunkedArray<T> copy() {
+		return new ChunkedArray<>(this);
+	}
+
+}
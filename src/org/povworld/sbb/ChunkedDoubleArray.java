@@ -0,0 +1,51 @@
+package org.povworld.sbb;
+
+import java.util.Arrays;
+
+/**
+ * Fixed size {@code double} array with cheap copies, see {@link AbstractChunkedArray}.
+ */
+final class ChunkedDoubleArray extends AbstractChunkedArray {
+
+	private final double[][] chunks;
+
+	ChunkedDoubleArray(double[] values) {
+		super(values.length);
+		this.chunks = new double[getChunkCount()][];
+		for (int c = 0; c < chunks.length; ++c) {
+			chunks[c] = Arrays.copyOfRange(values, c << CHUNK_BITS, (c << CHUNK_BITS) + CHUNK_SIZE);
+		}
+	}
+
+	private ChunkedDoubleArray(ChunkedDoubleArray original) {
+		super(original);
+		this.chunks = original.chunks.clone();
+	}
+
+	double get(int index) {
+		return chunks[index >>> CHUNK_BITS][index & CHUNK_MASK];
+	}
+
+	void set(int index, double value) {
+		int c = index >>> CHUNK_BITS;
+		double[] chunk = chunks[c];
+		if (chunk[index & CHUNK_MASK] == value) {
+			return;
+		}
+		if (!isOwned(c)) {
+			chunk = chunk.clone();
+			chunks[c] = chunk;
+			setOwned(c);
+		}
+		chunk[index & CHUNK_MASK] = value;
+	}
+
+	/**
+	 * Creates a copy sharing all chunks. Both this array and the copy clone a chunk before
+	 * writing it the next time.
+	 */
+	ChunkedDoubleArray copy() {
+		return new ChunkedDoubleArray(this);
+	}
+
+}
@@ -0,0 +1,51 @@
+package org.povworld.sbb;
+
+import java.util.Arrays;
+
+/**
+ * Fixed size {@code int} array with cheap copies, see {@link AbstractChunkedArray}.
+ */
+final class ChunkedIntArray extends AbstractChunkedArray {
+
+	private final int[][] chunks;
+
+	ChunkedIntArray(int[] values) {
+		super(values.length);
+		this.chunks = new int[getChunkCount()][];
+		for (int c = 0; c < chunks.length; ++c) {
+			chunks[c] = Arrays.copyOfRange(values, c << CHUNK_BITS, (c << CHUNK_BITS) + CHUNK_SIZE);
+		}
+	}
+
+	private ChunkedIntArray(ChunkedIntArray original) {
+		super(original);
+		this.chunks = original.chunks.clone();
+	}
+
+	int get(int index) {
+		return chunks[index >>> CHUNK_BITS][index & CHUNK_MASK];
+	}
+
+	void set(int index, int value) {
+		int c = index >>> CHUNK_BITS;
+		int[] chunk = chunks[c];
+		if (chunk[index & CHUNK_MASK] == value) {
+			return;
+		}
+		if (!isOwned(c)) {
+			chunk = chunk.clone();
+			chunks[c] = chunk;
+			setOwned(c);
+		}
+		chunk[index & CHUNK_MASK] = value;
+	}
+
+	/**
+	 * Creates a copy sharing all chunks. Both this array and the copy clone a chunk before
+	 * writing it the next time.
+	 */
+	ChunkedIntArray copy() {
+		return new ChunkedIntArray(this);
+	}
+
+}
@@ -8,6 +8,7 @@ public class ConflictBooster implements Booster<Conflict> {
 
 	private final HashMap<String, Double> boost = new HashMap<>();
 	private final double factor = 1.05;
+	private int generation = 0;
 	
 	@Override
 	public void boost(Conflict conflict) {
@@ -16,9 +17,18 @@ public class ConflictBooster implements Booster<Conflict> {
 			return;
 		}
 		boost.put(conflict.resource, factor * getBoost(conflict.resource));
+		generation++;
 		System.out.println("boosts: " + boost);
 	}
 
+	/**
+	 * Incremented on every change of a boost. Used to detect conflicts which were evaluated with
+	 * outdated boosts.
+	 */
+	public int getGeneration() {
+		return generation;
+	}
+
 	public double getBoost(String resource) {
 		return boost.getOrDefault(resource, 1.0);
 	}
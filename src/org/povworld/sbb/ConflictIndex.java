@@ -0,0 +1,239 @@
+package org.povworld.sbb;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import javax.annotation.CheckForNull;
+
+import org.povworld.collection.common.Assert;
+import org.povworld.collection.mutable.ArrayList;
+import org.povworld.sbb.ConnectionRepository.Connection;
+import org.povworld.sbb.ResourcePlan.Max;
+
+/**
+ * Persistent index of the conflicts of a {@link State}.
+ * <p>
+ * Every resource plan and every connection owns a slot holding its current conflict (or null).
+ * The slots are the leaves of a tournament tree where each inner node stores the worst conflict
+ * of its subtree, so the worst conflict of the state is found at the root. Updating a slot copies
+ * only the path to the root, all other nodes are shared with the index of the parent state.
+ * <p>
+ * Slots are ordered like the original linear scan (resource plans by resource index, then
+ * connections) and ties are resolved in favor of the lower slot, so the selected
+ * conflict does not depend on whether it was found by a full scan or through the index.
+ */
+public class ConflictIndex {
+
+	private static final class Node {
+		@CheckForNull
+		final Conflict worst;
+		@CheckForNull
+		final Node left;
+		@CheckForNull
+		final Node right;
+
+		Node(@CheckForNull Conflict worst, @CheckForNull Node left, @CheckForNull Node right) {
+			this.worst = worst;
+			this.left = left;
+			this.right = right;
+		}
+	}
+
+	/**
+	 * Slot layout shared by all indices derived from the same initial state. The slot of a resource
+	 * plan is its resource index, the connections follow after the resource plans.
+	 */
+	private static final class Slots {
+		final int resourceCount;
+		final ArrayList<Connection> connections = new ArrayList<>();
+		// intention index -> slots of its connections
+		final int[][] connectionSlotsByIntention;
+
+		Slots(int resourceCount, int intentionCount, ConnectionRepository connections) {
+			this.resourceCount = resourceCount;
+			int[] counts = new int[intentionCount];
+			for (Connection connection : connections.getAll()) {
+				this.connections.push(connection);
+				counts[connection.intentionFromIndex]++;
+				counts[connection.intentionToIndex]++;
+			}
+			connectionSlotsByIntention = new int[intentionCount][];
+			for (int i = 0; i < intentionCount; ++i) {
+				connectionSlotsByIntention[i] = new int[counts[i]];
+			}
+			Arrays.fill(counts, 0);
+			for (int i = 0; i < this.connections.size(); ++i) {
+				Connection connection = this.connections.get(i);
+				int slot = resourceCount + i;
+				connectionSlotsByIntention[connection.intentionFromIndex][counts[connection.intentionFromIndex]++] = slot;
+				connectionSlotsByIntention[connection.intentionToIndex][counts[connection.intentionToIndex]++] = slot;
+			}
+		}
+
+		int size() {
+			return resourceCount + connections.size();
+		}
+	}
+
+	private static final Node EMPTY_LEAF = new Node(null, null, null);
+
+	private final Slots slots;
+	@CheckForNull
+	private final Node root;
+	private final int boostGeneration;
+
+	private ConflictIndex(Slots slots, @CheckForNull Node root, int boostGeneration) {
+		this.slots = slots;
+		this.root = root;
+		this.boostGeneration = boostGeneration;
+	}
+
+	/**
+	 * Evaluates all resource plans and connections and creates a new index.
+	 */
+	static ConflictIndex create(ChunkedArray<ResourcePlan> resourcePlans,
+			ChunkedArray<GraphConstraints> graphConstraints, ConnectionRepository connections,
+			ConflictBooster conflictBooster) {
+		Slots slots = new Slots(resourcePlans.size(), graphConstraints.size(), connections);
+		Conflict[] conflicts = new Conflict[slots.size()];
+		for (int i = 0; i < slots.resourceCount; ++i) {
+			conflicts[i] = getConflict(resourcePlans.get(i), conflictBooster);
+		}
+		for (int i = 0; i < slots.connections.size(); ++i) {
+			conflicts[slots.resourceCount + i] = getConflict(slots.connections.get(i), graphConstraints);
+		}
+		return new ConflictIndex(slots, build(conflicts, 0, conflicts.length), conflictBooster.getGeneration());
+	}
+
+	@CheckForNull
+	public Conflict getWorst() {
+		return (root == null) ? null : root.worst;
+	}
+
+	public int getBoostGeneration() {
+		return boostGeneration;
+	}
+
+	/**
+	 * Re-evaluates the given resource plans and all connections of the given intentions. All
+	 * other slots are carried over from this index.
+	 */
+	ConflictIndex update(ChunkedArray<ResourcePlan> resourcePlans,
+			ChunkedArray<GraphConstraints> graphConstraints,
+			BitSet changedResources, BitSet changedIntentions,
+			ConflictBooster conflictBooster) {
+		ConflictIndex result = this;
+		if (boostGeneration != conflictBooster.getGeneration()) {
+			result = reboost(resourcePlans, conflictBooster);
+		}
+		Node newRoot = result.root;
+		for (int resource = changedResources.nextSetBit(0); resource >= 0;
+				resource = changedResources.nextSetBit(resource + 1)) {
+			newRoot = with(newRoot, 0, slots.size(), resource,
+					getConflict(resourcePlans.get(resource), conflictBooster));
+		}
+		BitSet changedConnections = new BitSet();
+		for (int intention = changedIntentions.nextSetBit(0); intention >= 0;
+				intention = changedIntentions.nextSetBit(intention + 1)) {
+			for (int slot : slots.connectionSlotsByIntention[intention]) {
+				changedConnections.set(slot);
+			}
+		}
+		for (int slot = changedConnections.nextSetBit(0); slot >= 0; slot = changedConnections.nextSetBit(slot + 1)) {
+			Connection connection = slots.connections.get(slot - slots.resourceCount);
+			newRoot = with(newRoot, 0, slots.size(), slot, getConflict(connection, graphConstraints));
+		}
+		return new ConflictIndex(slots, newRoot, result.boostGeneration);
+	}
+
+	/**
+	 * Re-evaluates all resource plans with the current boosts. The connection slots are carried
+	 * over as they are not boosted.
+	 */
+	ConflictIndex reboost(ChunkedArray<ResourcePlan> resourcePlans, ConflictBooster conflictBooster) {
+		Conflict[] conflicts = new Conflict[slots.size()];
+		collectLeaves(root, 0, conflicts.length, conflicts);
+		for (int i = 0; i < slots.resourceCount; ++i) {
+			conflicts[i] = getConflict(resourcePlans.get(i), conflictBooster);
+		}
+		return new ConflictIndex(slots, build(conflicts, 0, conflicts.length), conflictBooster.getGeneration());
+	}
+
+	@CheckForNull
+	static Conflict getConflict(ResourcePlan resourcePlan, ConflictBooster conflictBooster) {
+		Max maxDensityRange = resourcePlan.getMaxDensityRange(Debug.CONFLICT_SCHEDULE);
+		if (maxDensityRange == null) {
+			return null;
+		}
+		double maxDensity = maxDensityRange.density * conflictBooster.getBoost(resourcePlan.getResource());
+		Assert.assertTrue(maxDensity > 0, "zero density");
+		return new Conflict(maxDensity, resourcePlan.getResource(), maxDensityRange.interval);
+	}
+
+	@CheckForNull
+	static Conflict getConflict(Connection connection, ChunkedArray<GraphConstraints> graphConstraints) {
+		ConnectionOccupation occupation = ConnectionOccupation.create(connection, graphConstraints);
+		if (occupation.getBadness() <= 0) {
+			return null;
+		}
+		return new Conflict(occupation.getBadness(), occupation);
+	}
+
+	@CheckForNull
+	private static Node build(Conflict[] conflicts, int start, int end) {
+		if (start == end) {
+			return null;
+		}
+		if (end - start == 1) {
+			return leaf(conflicts[start]);
+		}
+		int mid = (start + end) >>> 1;
+		return inner(build(conflicts, start, mid), build(conflicts, mid, end));
+	}
+
+	private static Node with(Node node, int start, int end, int slot, @CheckForNull Conflict conflict) {
+		if (end - start == 1) {
+			return leaf(conflict);
+		}
+		int mid = (start + end) >>> 1;
+		if (slot < mid) {
+			return inner(with(node.left, start, mid, slot, conflict), node.right);
+		} else {
+			return inner(node.left, with(node.right, mid, end, slot, conflict));
+		}
+	}
+
+	private static void collectLeaves(@CheckForNull Node node, int start, int end, Conflict[] result) {
+		if (node == null) {
+			return;
+		}
+		if (end - start == 1) {
+			result[start] = node.worst;
+			return;
+		}
+		int mid = (start + end) >>> 1;
+		collectLeaves(node.left, start, mid, result);
+		collectLeaves(node.right, mid, end, result);
+	}
+
+	private static Node leaf(@CheckForNull Conflict conflict) {
+		return (conflict == null) ? EMPTY_LEAF : new Node(conflict, null, null);
+	}
+
+	private static Node inner(Node left, Node right) {
+		return new Node(worse(left.worst, right.worst), left, right);
+	}
+
+	@CheckForNull
+	private static Conflict worse(@CheckForNull Conflict first, @CheckForNull Conflict second) {
+		if (first == null) {
+			return second;
+		}
+		if (second == null) {
+			return first;
+		}
+		// Strictly worse only, on ties the lower slot wins.
+		return (second.badness > first.badness) ? second : first;
+	}
+
+}
@@ -1,14 +1,13 @@
 package org.povworld.sbb;
 
-import org.povworld.collection.Map;
 import org.povworld.collection.Set;
 import org.povworld.collection.common.Assert;
 import org.povworld.collection.common.Interval;
 import org.povworld.collection.immutable.ImmutableCollections;
 import org.povworld.collection.mutable.ArrayList;
-import org.povworld.collection.mutable.HashSet;
 import org.povworld.sbb.ConnectionRepository.Connection;
 import org.povworld.sbb.RouteGraph.Edge;
+import org.povworld.sbb.RouteGraph.MarkerEdges;
 
 public class ConnectionOccupation {
 	public final Connection connection;
@@ -17,8 +16,8 @@ public class ConnectionOccupation {
 	public final int earliestDeparture;
 	public final int latestDeparture;
 	
-	private final Set<Edge> arrivalEdges;
-	private final Set<Edge> departureEdges;
+	private final MarkerEdges arrivalEdges;
+	private final MarkerEdges departureEdges;
 	
 	// TODO this is used only for testing
 	ConnectionOccupation(Connection connection, int earliestArrival, int latestArrival, int earliestDeparture,
@@ -31,6 +30,14 @@ public class ConnectionOccupation {
 			Connection connection,
 			int earliestArrival, int latestArrival, int earliestDeparture, int latestDeparture,
 			Set<Edge> arrivalEdges, Set<Edge> departureEdges) {
+		this(connection, earliestArrival, latestArrival, earliestDeparture, latestDeparture,
+				new MarkerEdges(arrivalEdges), new MarkerEdges(departureEdges));
+	}
+
+	private ConnectionOccupation(
+			Connection connection,
+			int earliestArrival, int latestArrival, int earliestDeparture, int latestDeparture,
+			MarkerEdges arrivalEdges, MarkerEdges departureEdges) {
 		this.connection = connection;
 		this.earliestArrival = earliestArrival;
 		this.latestArrival = latestArrival;
@@ -88,12 +95,12 @@ public class ConnectionOccupation {
 		return 1.0 - areaGood / (areaA + areaB + areaC);
 	}
 
-	public static ConnectionOccupation create(Connection c, Map<String, GraphConstraints> timeConstraints) {
-		GraphConstraints timeConstraintsFrom = timeConstraints.get(c.intentionFrom);
+	static ConnectionOccupation create(Connection c, ChunkedArray<GraphConstraints> timeConstraints) {
+		GraphConstraints timeConstraintsFrom = timeConstraints.get(c.intentionFromIndex);
 		int earliestArrival = Integer.MAX_VALUE;
 		int latestArrival = 0;
-		Set<Edge> arrivalEdges = timeConstraintsFrom.getGraph().getEdgesByMarker(c.markerFrom);
-		for (Edge edge : arrivalEdges) {
+		MarkerEdges arrivalEdges = timeConstraintsFrom.getGraph().getMarkerEdges(c.markerFrom);
+		for (Edge edge : arrivalEdges.edges) {
 			if (!timeConstraintsFrom.isFeasible(edge)) {
 				continue;
 			}
@@ -101,11 +108,11 @@ public class ConnectionOccupation {
 			latestArrival = Math.max(latestArrival, timeConstraintsFrom.getEntryLatest(edge));
 		}
 		
-		GraphConstraints timeConstraintsTo = timeConstraints.get(c.intentionTo);
+		GraphConstraints timeConstraintsTo = timeConstraints.get(c.intentionToIndex);
 		int latestDeparture = 0;
 		int earliestDeparture = Integer.MAX_VALUE;
-		Set<Edge> departureEdges = timeConstraintsTo.getGraph().getEdgesByMarker(c.markerTo);
-		for (Edge edge: departureEdges) {
+		MarkerEdges departureEdges = timeConstraintsTo.getGraph().getMarkerEdges(c.markerTo);
+		for (Edge edge: departureEdges.edges) {
 			if (!timeConstraintsTo.isFeasible(edge)) {
 				continue;
 			}
@@ -133,31 +140,15 @@ public class ConnectionOccupation {
 		ArrayList<ConflictSchedule> schedules = new ArrayList<>(2);
 		schedules.push(new ConflictSchedule(ImmutableCollections.listOf(
 				new IntentionRestriction.IncreaseMinTimeRestriction(
-						connection.intentionTo, earliestDepartureMin, getOutgoing(departureEdges))),
+						connection.intentionTo, earliestDepartureMin, departureEdges.allNext)),
 				1.0 / (latestDeparture - earliestDeparture)));
 		schedules.push(new ConflictSchedule(ImmutableCollections.listOf(
 				new IntentionRestriction.DecreaseMaxTimeRestriction(
-						connection.intentionFrom, latestArrivalMax, getIncoming(arrivalEdges))) ,
+						connection.intentionFrom, latestArrivalMax, arrivalEdges.allPrevious)) ,
 				1.0 / (latestArrival - earliestArrival)));
 		return schedules;
 	}
 	
-	private Set<Edge> getIncoming(Set<Edge> arrivalEdges) {
-		HashSet<Edge> result = new HashSet<>(arrivalEdges.size());
-		for(Edge edge: arrivalEdges) {
-			result.addAll(edge.start.getPrevious());
-		}
-		return result;
-	}
-
-	private Set<Edge> getOutgoing(Set<Edge> departureEdges) {
-		HashSet<Edge> result = new HashSet<>(departureEdges.size());
-		for(Edge edge: departureEdges) {
-			result.addAll(edge.end.getNext());
-		}
-		return result;
-	}
-
 	@Override
 	public String toString() {
 		return TimeUtil.printTimeInterval(new Interval(earliestArrival, latestArrival)) + " - "
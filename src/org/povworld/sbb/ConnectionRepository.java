@@ -1,12 +1,13 @@
 package org.povworld.sbb;
 
+import java.util.BitSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.povworld.collection.Collection;
+import org.povworld.collection.List;
 import org.povworld.collection.mutable.ArrayList;
 import org.povworld.collection.mutable.HashMultiMap;
-import org.povworld.sbb.Input.Scenario;
 import org.povworld.sbb.Input.SectionRequirement;
 import org.povworld.sbb.Input.ServiceIntention;
 
@@ -15,14 +16,19 @@ public class ConnectionRepository {
 	public static class Connection {
 		public final String intentionFrom;
 		public final String intentionTo;
+		// Dense indices of the intentions, see Problem.
+		public final int intentionFromIndex;
+		public final int intentionToIndex;
 		public final String markerFrom;
 		public final String markerTo;
 		public final int minConnectionTime;
 
-		public Connection(String intentionFrom, String intentionTo, String markerFrom, String markerTo,
-				int minConnectionTime) {
+		public Connection(String intentionFrom, int intentionFromIndex, String intentionTo, int intentionToIndex,
+				String markerFrom, String markerTo, int minConnectionTime) {
 			this.intentionFrom = intentionFrom;
 			this.intentionTo = intentionTo;
+			this.intentionFromIndex = intentionFromIndex;
+			this.intentionToIndex = intentionToIndex;
 			this.markerFrom = markerFrom;
 			this.markerTo = markerTo;
 			this.minConnectionTime = minConnectionTime;
@@ -38,37 +44,40 @@ public class ConnectionRepository {
 	private static final Logger logger = Logger.getLogger(ConnectionRepository.class.getSimpleName());
 
 	private final ArrayList<Connection> connections = new ArrayList<>();
-	private final HashMultiMap<String, Connection> connectionsIn = new HashMultiMap<>();
-	private final HashMultiMap<String, Connection> connectionsOut = new HashMultiMap<>();
+	// Intention index -> positions of its connections in the connections list.
+	private final HashMultiMap<Integer, Integer> connectionsIn = new HashMultiMap<>();
+	private final HashMultiMap<Integer, Integer> connectionsOut = new HashMultiMap<>();
 
 	private ConnectionRepository() {
 
 	}
 
-	public static ConnectionRepository create(Scenario scenario) {
+	public static ConnectionRepository create(Problem problem) {
 		ConnectionRepository result = new ConnectionRepository();
 		if (!Debug.ENDABLE_CONNECTIONS) {
 			return result;
 		}
-		for (ServiceIntention intention : scenario.getServiceIntentionsList()) {
+		for (ServiceIntention intention : problem.getScenario().getServiceIntentionsList()) {
 			for (SectionRequirement requirement : intention.getSectionRequirementsList()) {
 				for (org.povworld.sbb.Input.Connection connection : requirement.getConnectionsList()) {
-					result.add(intention.getId(), connection.getOntoServiceIntention(), requirement.getSectionMarker(),
-							connection.getOntoSectionMarker(), connection.getMinConnectionTimeSeconds());
+					result.add(problem, intention.getId(), connection.getOntoServiceIntention(),
+							requirement.getSectionMarker(), connection.getOntoSectionMarker(),
+							connection.getMinConnectionTimeSeconds());
 				}
 			}
 		}
 		return result;
 	}
 
-	private void add(String intentionFrom, String intentionTo, String markerFrom, String markerTo,
+	private void add(Problem problem, String intentionFrom, String intentionTo, String markerFrom, String markerTo,
 			int minConnectionTime) {
 		logger.log(Level.INFO, "Connection from {0}/{1} to {2}/{3} with at least {4}s.",
 				new Object[] { intentionFrom, intentionTo, markerFrom, markerTo, minConnectionTime });
-		Connection c = new Connection(intentionFrom, intentionTo, markerFrom, markerTo, minConnectionTime);
+		Connection c = new Connection(intentionFrom, problem.getIntentionIndex(intentionFrom), intentionTo,
+				problem.getIntentionIndex(intentionTo), markerFrom, markerTo, minConnectionTime);
+		connectionsIn.put(c.intentionToIndex, connections.size());
+		connectionsOut.put(c.intentionFromIndex, connections.size());
 		connections.push(c);
-		connectionsIn.put(intentionTo, c);
-		connectionsOut.put(intentionFrom, c);
 	}
 
 	
@@ -76,4 +85,25 @@ public class ConnectionRepository {
 		return connections;
 	}
 
+	/**
+	 * @return the connections from or to any of the given intentions in the order of {@link #getAll()}
+	 */
+	public List<Connection> getConnections(BitSet intentions) {
+		BitSet positions = new BitSet(connections.size());
+		for (int intention = intentions.nextSetBit(0); intention >= 0;
+				intention = intentions.nextSetBit(intention + 1)) {
+			for (int position : connectionsIn.get(intention)) {
+				positions.set(position);
+			}
+			for (int position : connectionsOut.get(intention)) {
+				positions.set(position);
+			}
+		}
+		ArrayList<Connection> result = new ArrayList<>(positions.cardinality());
+		for (int position = positions.nextSetBit(0); position >= 0; position = positions.nextSetBit(position + 1)) {
+			result.push(connections.get(position));
+		}
+		return result;
+	}
+
 }
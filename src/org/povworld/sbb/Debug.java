@@ -8,6 +8,7 @@ public class Debug {
 	public static final boolean ENABLE_DENSITY_MAP_CONSISTENCY_CHECKS = false;
 	public static final boolean ENABLE_TIME_CONSTRAINS_CONSISTENCY_CHECKS = false;
 	public static final boolean ENABLE_RESOURCE_PLAN_CONSITENCY_CHECKS = false;
+	public static final boolean ENABLE_CONFLICT_INDEX_CONSISTENCY_CHECKS = false;
 
 	public static final boolean SOLVER_SHOW_DEBUG = false;
 	public static final boolean UNPARSE_INTERVAL_TIME = false;
@@ -15,8 +16,12 @@ public class Debug {
 
 	public static final boolean ENDABLE_CONNECTIONS = true;
 	public static /* final */ double MAX_PENALTY_PER_INTENTION = 28;
+	// Minimum improvement of the penalty between two solutions of an anytime search.
+	public static final double ANYTIME_PENALTY_STEP = 1.0 / 60;
 
 	public static final int MAX_PRIORITY_LIST_SIZE = 25;
+	public static final int PARALLEL_SPLIT_DEPTH = 4;
+	public static final boolean PARALLEL_RESCORE = true;
 	
 	public static /* final */ double CONNECTION_LATE_PROBABILITY_TO_BADNESS_FACTOR = 7.5;
 	public static final double REMOVED_PATH_BADNESS_FACTOR = 2;
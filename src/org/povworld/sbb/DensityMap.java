@@ -1,26 +1,31 @@
 package org.povworld.sbb;
 
+import java.util.Arrays;
 import java.util.Map;
 import java.util.TreeMap;
 
 import javax.annotation.CheckForNull;
 
-import org.povworld.collection.EntryIterator;
 import org.povworld.collection.common.Interval;
-import org.povworld.collection.mutable.IntervalMap;
-import org.povworld.collection.mutable.TreeMultiMap;
 
+/**
+ * Sum of piecewise linear densities over time.
+ * <p>
+ * The maximum is found by a single sweep over the sorted start and end points of all ranges.
+ * Between two consecutive points the density is linear, so the running density and slope are
+ * enough to evaluate each segment.
+ */
 public class DensityMap {
-    
+
     private static final double EPS = 1e-8;
-    
-    private static class Range implements Comparable<Range> {
+
+    private static class Range {
         final String id;
         final int start;
         final int end;
         final double slope;
         final double endDensity;
-        
+
         public Range(String id, int start, int end, double slope, double endDensity) {
             this.id = id;
             this.start = start;
@@ -28,56 +33,20 @@ public class DensityMap {
             this.slope = slope;
             this.endDensity = endDensity;
         }
-        
+
         public double densityAt(int t) {
             return endDensity - slope * (end - t);
         }
-        
+
         @Override
         public String toString() {
             return endDensity + "-" + slope + "*(" + end + "-t)";
         }
-        
-        @Override
-        public int compareTo(Range o) {
-            if (start == o.start) {
-                return id.compareTo(o.id);
-            }
-            return Integer.compare(start, o.start);
-        }
-        
-        @Override
-        public int hashCode() {
-            final int prime = 31;
-            int result = 1;
-            result = prime * result + id.hashCode();
-            result = prime * result + start;
-            return result;
-        }
-        
-        @Override
-        public boolean equals(Object obj) {
-            if (this == obj)
-                return true;
-            if (obj == null)
-                return false;
-            if (!(obj instanceof Range))
-                return false;
-            Range other = (Range)obj;
-            if (id == null) {
-                if (other.id != null)
-                    return false;
-            } else if (!id.equals(other.id))
-                return false;
-            if (start != other.start)
-                return false;
-            return true;
-        }
     }
-    
-    /** Maps interval by start to their density. */
-    private IntervalMap<Range> densities = IntervalMap.create(Range.class);
-    
+
+    private Range[] ranges = new Range[8];
+    private int size = 0;
+
     public void addTrapezoid(String id, Interval rampup, Interval rampdown, double density) {
         add(id, rampup.getStart(), rampup.getEnd(), 0.0, density);
         if (rampup.getEnd() != rampdown.getStart()) {
@@ -85,7 +54,7 @@ public class DensityMap {
         }
         add(id, rampdown.getStart(), rampdown.getEnd(), density, 0.0);
     }
-    
+
     public void removeTrapezoid(String id, Interval rampup, Interval rampdown, double density) {
         remove(id, rampup.getStart(), rampup.getEnd(), 0.0, density);
         if (rampup.getEnd() != rampdown.getStart()) {
@@ -93,66 +62,62 @@ public class DensityMap {
         }
         remove(id, rampdown.getStart(), rampdown.getEnd(), density, 0.0);
     }
-    
+
     public void add(String id, Interval interval, double density) {
         add(id, interval.getStart(), interval.getEnd(), density, density);
     }
-    
+
     public void add(String id, int start, int end, double startDensity, double endDensity) {
+        if (start == end) {
+            // Empty ranges do not contribute to any time point.
+            return;
+        }
         int length = end - start;
         double slope = (endDensity - startDensity) / length;
-        densities.add(new Interval(start, end), new Range(id, start, end, slope, endDensity));
+        if (size == ranges.length) {
+            ranges = Arrays.copyOf(ranges, 2 * size);
+        }
+        ranges[size++] = new Range(id, start, end, slope, endDensity);
         assertRangeConsistency();
     }
-    
+
     public void remove(String id, Interval interval, double density) {
         remove(id, interval.getStart(), interval.getEnd(), density, density);
     }
-    
+
     public void remove(String id, int start, int end, double startDensity, double endDensity) {
-        int length = end - start;
-        double slope = (endDensity - startDensity) / length;
-        densities.remove(new Interval(start, end), new Range(id, start, end, slope, endDensity));
+        for (int i = 0; i < size; ++i) {
+            Range range = ranges[i];
+            if (range.start == start && range.end == end && range.id.equals(id)) {
+                System.arraycopy(ranges, i + 1, ranges, i, size - i - 1);
+                ranges[--size] = null;
+                return;
+            }
+        }
     }
-    
+
     public boolean isEmpty() {
-        return densities.isEmpty();
+        return size == 0;
     }
-    
+
     public double getMaxValue() {
         return calculateMax(1).density;
     }
-    
-    private double getDensity(Iterable<Range> ranges, int time) {
-        double density = 0;
-        for (Range r: ranges) {
-            density += r.densityAt(time);
-        }
-        return density;
-    }
-    
-    private double getAbsSlope(Iterable<Range> ranges) {
-        double slope = 0;
-        for (Range r: ranges) {
-            slope += r.slope;
-        }
-        return Math.abs(slope);
-    }
-    
+
     public Max getMaxDensityWithInterval(int minOverlappers) {
         return calculateMax(minOverlappers);
     }
-    
+
     @CheckForNull
     public Interval getMax() {
         return getMax(1);
     }
-    
+
     @CheckForNull
     public Interval getMax(int minOverlappers) {
         return calculateMax(minOverlappers).interval;
     }
-    
+
     public static class Max {
         Max(Interval interval, double density) {
             this.interval = interval;
@@ -161,125 +126,120 @@ public class DensityMap {
         final Interval interval;
         final double density;
     }
-    
+
+    /**
+     * @return the start and end points of all ranges sorted by time. The upper 32 bits hold the
+     *         time, the lower ones twice the range index plus one for an end point.
+     */
+    private long[] getSortedPoints() {
+        long[] points = new long[2 * size];
+        for (int i = 0; i < size; ++i) {
+            points[2 * i] = ((long)ranges[i].start << 32) | (2 * i);
+            points[2 * i + 1] = ((long)ranges[i].end << 32) | (2 * i + 1);
+        }
+        Arrays.sort(points);
+        return points;
+    }
+
     private Max calculateMax(int minOverlappers) {
         Interval maxInterval = null;
         double max = 0;
         double maxSlope = 0;
-        
-        int now = Integer.MIN_VALUE;
-        TreeMultiMap<Integer, Range> activeRanges = TreeMultiMap.create(Integer.class, Range.class);
-        
-        EntryIterator<Interval, Range> it = densities.entryIterator();
-        while (it.next()) {
-            Range range = it.getCurrentValue();
-            int next = range.start;
-            
-            int firstEnd;
-            while (!activeRanges.isEmpty() && (firstEnd = activeRanges.getFirstKeyOrNull()) <= next) {
-                if (activeRanges.valueCount() >= minOverlappers) {
-                    double startDensity = getDensity(activeRanges.flatValues(), now);
-                    double endDensity = getDensity(activeRanges.flatValues(), firstEnd);
-                    double maxStartEnd = Math.max(startDensity, endDensity);
-                    if ((maxStartEnd > max + EPS) || (maxStartEnd > max - EPS && getAbsSlope(activeRanges.flatValues()) < maxSlope)) {
-                        max = maxStartEnd;
-                        maxInterval = new Interval(now, firstEnd);
-                        maxSlope = getAbsSlope(activeRanges.flatValues());
-                    }
+
+        int now = 0;
+        double density = 0;
+        double slope = 0;
+        int overlappers = 0;
+
+        long[] points = getSortedPoints();
+        int i = 0;
+        while (i < points.length) {
+            int next = (int)(points[i] >> 32);
+
+            double nextDensity = density + slope * (next - now);
+            if (overlappers > 0 && overlappers >= minOverlappers) {
+                double maxStartEnd = Math.max(density, nextDensity);
+                double absSlope = Math.abs(slope);
+                // The slope is a running sum, so it gets a tolerance like the density.
+                if ((maxStartEnd > max + EPS) || (maxStartEnd > max - EPS && absSlope < maxSlope - EPS)) {
+                    max = maxStartEnd;
+                    maxInterval = new Interval(now, next);
+                    maxSlope = absSlope;
                 }
-                activeRanges.remove(firstEnd);
-                now = firstEnd;
             }
-            
-            if (now < next) {
-                if (activeRanges.valueCount() >= minOverlappers) {
-                    double startDensity = getDensity(activeRanges.flatValues(), now);
-                    double endDensity = getDensity(activeRanges.flatValues(), next);
-                    double maxStartEnd = Math.max(startDensity, endDensity);
-                    if ((maxStartEnd > max + EPS) || (maxStartEnd > max - EPS && getAbsSlope(activeRanges.flatValues()) < maxSlope)) {
-                        max = maxStartEnd;
-                        maxInterval = new Interval(now, next);
-                        maxSlope = getAbsSlope(activeRanges.flatValues());
-                    }
+
+            density = nextDensity;
+            for (; i < points.length && (int)(points[i] >> 32) == next; ++i) {
+                int point = (int)points[i];
+                Range range = ranges[point >> 1];
+                if ((point & 1) == 0) {
+                    density += range.densityAt(next);
+                    slope += range.slope;
+                    overlappers++;
+                } else {
+                    density -= range.endDensity;
+                    slope -= range.slope;
+                    overlappers--;
                 }
-                now = next;
             }
-            activeRanges.put(range.end, range);
-        }
-        
-        while (activeRanges.keyCount() >= minOverlappers) {
-            int end = activeRanges.getFirstKeyOrNull();
-            double startDensity = getDensity(activeRanges.flatValues(), now);
-            double endDensity = getDensity(activeRanges.flatValues(), end);
-            double maxStartEnd = Math.max(startDensity, endDensity);
-            if ((maxStartEnd > max + EPS) || (maxStartEnd > max - EPS && getAbsSlope(activeRanges.flatValues()) < maxSlope)) {
-                max = maxStartEnd;
-                maxInterval = new Interval(now, end);
-                maxSlope = getAbsSlope(activeRanges.flatValues());
+            if (overlappers == 0) {
+                // Do not carry rounding errors over to the next overlapping ranges.
+                density = 0;
+                slope = 0;
             }
-            now = end;
-            // TODO process all ranges with same end in inner loop
-            activeRanges.remove(end, activeRanges.get(end).getFirst());
+            now = next;
+        }
+
+        if (maxInterval == null) {
+            return new Max(null, 0);
         }
-        
-        return new Max(maxInterval, max);
+        // Evaluate the ranges of the selected segment directly, free of the sweep's rounding errors.
+        double startDensity = getDensity(maxInterval.getStart(), maxInterval.getStart());
+        double endDensity = getDensity(maxInterval.getStart(), maxInterval.getEnd());
+        return new Max(maxInterval, Math.max(startDensity, endDensity));
     }
-    
+
     public Map<Integer, Double> points() {
         Map<Integer, Double> result = new TreeMap<>();
-        if (isEmpty()) {
-            return result;
-        }
-        
-        EntryIterator<Interval, Range> it = densities.entryIterator();
-        while (it.next()) {
-            int start = it.getCurrentKey().getStart();
-            int end = it.getCurrentKey().getEnd();
-            result.put(start, getDensity(start));
-            result.put(end, getDensity(end));
+        for (int i = 0; i < size; ++i) {
+            Range range = ranges[i];
+            result.put(range.start, getDensity(range.start));
+            result.put(range.end, getDensity(range.end));
         }
         return result;
     }
-    
-    @CheckForNull
+
     public double getDensity(int time) {
+        return getDensity(time, time);
+    }
+
+    /**
+     * @return the sum of the ranges overlapping {@code time}, evaluated at {@code at}
+     */
+    private double getDensity(int time, int at) {
         double density = 0;
-        for (Range range: densities.getOverlappers(time)) {
-            density += range.densityAt(time);
+        for (int i = 0; i < size; ++i) {
+            Range range = ranges[i];
+            if (range.start <= time && time < range.end) {
+                density += range.densityAt(at);
+            }
         }
         return density;
     }
-    
-//	public double integrate(int start, int end) {
-//		double density = 0;
-//		for(Entry<Range<Integer>, Double> e: densities.subRangeMap(Range.closed(start, end)).asMapOfRanges().entrySet()) {
-//			Range<Integer> range = e.getKey();
-//			density += (range.upperEndpoint() - range.lowerEndpoint() + 1) * e.getValue();
-//		}
-//		return density;
-//	}
-    
+
     private void assertRangeConsistency() {
         if (!Debug.ENABLE_DENSITY_MAP_CONSISTENCY_CHECKS) {
             return;
         }
-//		int lastEnd = Integer.MIN_VALUE;
-//		for (Entry<Integer, Range> e : densities.entrySet()) {
-//			Integer start = e.getKey();
-//			int end = e.getValue().end - 1;
-//			if (start > end) {
-//				throw new AssertionError(start + " > " + e.getValue());
-//			}
-//			if (start < lastEnd) {
-//				throw new AssertionError(start + " < " + lastEnd);
-//			}
-//			lastEnd = end;
-//		}
+        Range range = ranges[size - 1];
+        if (range.start > range.end) {
+            throw new AssertionError(range.start + " > " + range);
+        }
     }
-    
+
     @Override
     public String toString() {
-        return densities.toString();
+        return Arrays.toString(Arrays.copyOf(ranges, size));
     }
-    
+
 }
@@ -0,0 +1,29 @@
+package org.povworld.sbb;
+
+/**
+ * Zobrist style hashing of search states.
+ * <p>
+ * The fingerprint of a state is the XOR of the keys of all its (position, value) pairs. So when a
+ * value changes, the fingerprint is updated by XORing out the key of the old value and XORing in
+ * the key of the new one. Instead of a table of random numbers, the keys are computed by mixing
+ * position and value with the SplitMix64 finalizer.
+ */
+final class Fingerprint {
+
+	private Fingerprint() {}
+
+	static long key(long position, long value) {
+		return mix(mix(position + 1) ^ value);
+	}
+
+	static long key(long position, double value) {
+		return key(position, Double.doubleToLongBits(value));
+	}
+
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+}
@@ -1,5 +1,7 @@
 package org.povworld.sbb;
 
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Comparator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -14,14 +16,10 @@ import org.povworld.collection.common.Assert;
 import org.povworld.collection.common.PreConditions;
 import org.povworld.collection.immutable.ImmutableCollections;
 import org.povworld.collection.immutable.ImmutableList;
-import org.povworld.collection.immutable.ImmutableMap;
 import org.povworld.collection.mutable.ArrayList;
 import org.povworld.collection.mutable.HashMap;
 import org.povworld.collection.mutable.HashSet;
-import org.povworld.collection.persistent.PersistentHashMap;
-import org.povworld.collection.persistent.PersistentHashSet;
-import org.povworld.collection.persistent.PersistentMap;
-import org.povworld.collection.persistent.PersistentSet;
+import org.povworld.sbb.GraphResourceOccupations.ResourceOccupation;
 import org.povworld.sbb.Input.RouteSection;
 import org.povworld.sbb.Input.SectionRequirement;
 import org.povworld.sbb.Input.ServiceIntention;
@@ -35,89 +33,56 @@ public class GraphConstraints {
 	
 	private static final Logger logger = Logger.getLogger(GraphConstraints.class.getSimpleName());
 	
-	private static final class TimeConstraint {
-		private final int entryEarliest;
-		private final int exitLatest;
-
-		public TimeConstraint() {
-			this(0, TMAX);
-		}
-		
-		private TimeConstraint(int entryEarliest, int exitLatest) {
-			this.entryEarliest = entryEarliest;
-			this.exitLatest = exitLatest;
-		}
-		
-		public TimeConstraint withEntryEarliest(int time) {
-			if (time <= this.entryEarliest) {
-				return this;
-			}
-			return new TimeConstraint(time, exitLatest);
-		}
-
-		public TimeConstraint withExitLatest(int time) {
-			if (time >= this.exitLatest) {
-				return this;
-			}
-			return new TimeConstraint(entryEarliest, time);
-		}
-		
-		@Override
-		public boolean equals(Object obj) {
-			if (this == obj)
-				return true;
-			if (obj == null)
-				return false;
-			if (!(obj instanceof TimeConstraint))
-				return false;
-			TimeConstraint other = (TimeConstraint) obj;
-			if (exitLatest != other.exitLatest)
-				return false;
-			if (entryEarliest != other.entryEarliest)
-				return false;
-			return true;
-		}
-
-		@Override
-		public int hashCode() {
-			final int prime = 31;
-			int result = 1;
-			result = prime * result + exitLatest;
-			result = prime * result + entryEarliest;
-			return result;
-		}
-	}
+	private static final int NO_LATEST_ALLOWED_TIME = -1;
+	
+	// Fingerprint positions of edge i are 3 * i (entry earliest), 3 * i + 1 (exit latest) and
+	// 3 * i + 2 (infeasible).
+	private static final long MAX_PENALTY_POSITION = -2;
 	
+	// All arrays are indexed by the ordinals of the graph's nodes and edges.
 	private final RouteGraph graph;
-	private final ImmutableMap<Edge, Integer> minDurations;
-	private final Map<Node, Integer> latestAllowedTimes; 
+	private final int[] minDurations;
+	private final int[] latestAllowedTimes; 
 
 	// Needs to be saved/restored:
-	private PersistentMap<Node, Double> weights;
-	private PersistentMap<Edge, TimeConstraint> edgeTimeConstraints;
-	private PersistentSet<Edge> infeasibleEdges; // TODO replace by boolean on TimeConstraint?
-	private PersistentMap<Node, Double> penaltyForward;
-	private PersistentMap<Node, Double> penaltyBackward;
-	private PersistentMap<Node, PenaltyTimeSet> penaltyTimeSets;
+	private ChunkedDoubleArray weights;
+	private ChunkedIntArray entryEarliest;
+	private ChunkedIntArray exitLatest;
+	private BitSet infeasibleEdges;
+	// Number of feasible outgoing edges of each node.
+	private ChunkedIntArray feasibleOutDegrees;
+	private ChunkedDoubleArray penaltyForward;
+	private ChunkedDoubleArray penaltyBackward;
+	private ChunkedArray<PenaltyTimeSet> penaltyTimeSets;
 	private double maxPenalty;
 	private double minPenalty;
+	// Fingerprint of entryEarliest, exitLatest, infeasibleEdges and maxPenalty, the other values
+	// are derived from these.
+	private long fingerprint;
+	// Ordinals of the nodes whose incoming times or incident edges changed since the path
+	// penalties were last updated.
+	private BitSet penaltyDirtyNodes;
+	// Set if the max penalty decreased since the path penalties were last checked against it.
+	private boolean maxPenaltyDecreased = true;
 	
 	private boolean markedEdgeInfeasibleSinceLastUpdate = false;
 
-	private GraphConstraints(RouteGraph graph, ImmutableMap<Edge, Integer> minDurations,
-			PersistentMap<Node, Double> weights, PersistentMap<Edge, TimeConstraint> edgeTimeConstraints,
-			PersistentSet<Edge> infeasibleEdges, PersistentMap<Node, Double> penaltyForward,
-			PersistentMap<Node, Double> penaltyBackward, Map<Node, Integer> latestAllowedTimes,
-			PersistentMap<Node, PenaltyTimeSet> penaltyTimeSets, 
-			double maxPenalty, double minPenalty) {
+	private GraphConstraints(RouteGraph graph, int[] minDurations, int[] latestAllowedTimes,
+			ChunkedDoubleArray weights, ChunkedIntArray entryEarliest, ChunkedIntArray exitLatest,
+			BitSet infeasibleEdges, ChunkedIntArray feasibleOutDegrees, ChunkedDoubleArray penaltyForward,
+			ChunkedDoubleArray penaltyBackward, BitSet penaltyDirtyNodes,
+			ChunkedArray<PenaltyTimeSet> penaltyTimeSets, double maxPenalty, double minPenalty) {
 		this.graph = graph;
-		this.weights = weights;
-		this.edgeTimeConstraints = edgeTimeConstraints;
 		this.minDurations = minDurations;
+		this.latestAllowedTimes = latestAllowedTimes;
+		this.weights = weights;
+		this.entryEarliest = entryEarliest;
+		this.exitLatest = exitLatest;
 		this.infeasibleEdges = infeasibleEdges;
+		this.feasibleOutDegrees = feasibleOutDegrees;
 		this.penaltyForward = penaltyForward;
 		this.penaltyBackward = penaltyBackward;
-		this.latestAllowedTimes = latestAllowedTimes;
+		this.penaltyDirtyNodes = penaltyDirtyNodes;
 		this.penaltyTimeSets = penaltyTimeSets;
 		this.maxPenalty = maxPenalty;
 		this.minPenalty = minPenalty;
@@ -131,11 +96,36 @@ public class GraphConstraints {
 		return minPenalty;
 	}
 
+	/**
+	 * @return hash of the constraints which is equal for equal constraints and is kept up to date
+	 *         incrementally on every modification
+	 */
+	public long getFingerprint() {
+		return fingerprint;
+	}
+
 	public GraphConstraints copy() {
 		assertNotDirty();
-		return new GraphConstraints(graph, minDurations, weights, edgeTimeConstraints, infeasibleEdges,
-				penaltyForward, penaltyBackward, latestAllowedTimes, penaltyTimeSets,  
-				maxPenalty, minPenalty);
+		// Copying must not write to this, constraints of a state are copied concurrently.
+		GraphConstraints copy = new GraphConstraints(graph, minDurations, latestAllowedTimes, weights.copy(),
+				entryEarliest.copy(), exitLatest.copy(), (BitSet) infeasibleEdges.clone(), feasibleOutDegrees.copy(),
+				penaltyForward.copy(), penaltyBackward.copy(), (BitSet) penaltyDirtyNodes.clone(),
+				penaltyTimeSets.copy(), maxPenalty, minPenalty);
+		copy.fingerprint = fingerprint;
+		copy.maxPenaltyDecreased = maxPenaltyDecreased;
+		return copy;
+	}
+
+	private long computeFingerprint() {
+		long result = Fingerprint.key(MAX_PENALTY_POSITION, maxPenalty);
+		for (int i = 0; i < graph.getEdgeCount(); ++i) {
+			result ^= Fingerprint.key(3L * i, entryEarliest.get(i));
+			result ^= Fingerprint.key(3L * i + 1, exitLatest.get(i));
+			if (infeasibleEdges.get(i)) {
+				result ^= Fingerprint.key(3L * i + 2, 1);
+			}
+		}
+		return result;
 	}
 
 	private void assertNotDirty() {
@@ -145,11 +135,11 @@ public class GraphConstraints {
 	}
 	
 	public int getEntryEarliest(Edge edge) {
-		return edgeTimeConstraints.get(edge).entryEarliest;
+		return entryEarliest.get(edge.getIndex());
 	}
 	
 	public int getExitLatest(Edge edge) {
-		return edgeTimeConstraints.get(edge).exitLatest;
+		return exitLatest.get(edge.getIndex());
 	}
 	
 	public int getEntryLatest(Edge edge) {
@@ -162,36 +152,67 @@ public class GraphConstraints {
 	
 	@CheckForNull
 	public OccupationTimes getOccupationTimes(Edge start, Edge end, List<Edge> flow) {
+		int[] flowEdges = new int[flow.size()];
+		int startIndex = -1;
+		int endIndex = -1;
+		for (int i = 0; i < flow.size(); ++i) {
+			Edge edge = flow.get(i);
+			flowEdges[i] = edge.getIndex();
+			if (edge == start) {
+				startIndex = i;
+			}
+			if (edge == end) {
+				endIndex = i;
+			}
+		}
+		MutableOccupationTimes times = new MutableOccupationTimes();
+		if (!getOccupationTimes(flowEdges, startIndex, endIndex, times)) {
+			return null;
+		}
+		return times.toOccupationTimes();
+	}
+	
+	/**
+	 * Same as {@link #getOccupationTimes(Edge, Edge, List)} for the precompiled flow of
+	 * {@code occupation}, but writes the times to {@code result} instead of allocating them.
+	 * 
+	 * @return false if the occupation is not possible, {@code result} is unchanged then
+	 */
+	boolean getOccupationTimes(ResourceOccupation occupation, MutableOccupationTimes result) {
+		return getOccupationTimes(occupation.flowEdges, occupation.flowStartIndex, occupation.flowEndIndex,
+				result);
+	}
+	
+	private boolean getOccupationTimes(int[] flow, int startIndex, int endIndex, MutableOccupationTimes result) {
 		assertNotDirty();
 		// TODO check if max penalty is violated 
 		
 		// Forward pass for earliest times:
 		int entryEarliest = -1;
 		int exitEarliest = -1;
-		Edge first = flow.getFirst();
-		double forwardWeight = weights.get(first.start);
+		double forwardWeight = getWeight(graph.getEdge(flow[0]).start);
 		int current = 0;
-		for(Edge edge: flow) {
-			if (infeasibleEdges.contains(edge)) {
-				return null;
+		for (int i = 0; i < flow.length; ++i) {
+			if (infeasibleEdges.get(flow[i])) {
+				return false;
 			}
+			Edge edge = graph.getEdge(flow[i]);
 			
-			TimeConstraint constraint = edgeTimeConstraints.get(edge);
-			current = Math.max(current, constraint.entryEarliest);
+			current = Math.max(current, this.entryEarliest.get(flow[i]));
 			
-			if (edge == start) {
+			if (i == startIndex) {
 				entryEarliest = current;
 			}  
 			
-			int outCount = countFeasibleEdges(edge.start.getNext());
+			int outCount = getFeasibleOutDegree(edge.start);
 			if (outCount == 0) {
 				throw new IllegalStateException("oops");
 			}
 			forwardWeight /= outCount;
 			
-			current = Math.max(current + minDurations.get(edge), getEarliestOutgoing(edge.end));
+			current = Math.max(current + minDurations[flow[i]], getEarliestOutgoing(edge.end));
 			
-			if (edge == end) {
+			if (i == endIndex) {
 				exitEarliest = current;
 			}
 		}
@@ -203,258 +224,359 @@ public class GraphConstraints {
 		}
 
 		if (Debug.ENABLE_TIME_CONSTRAINS_CONSISTENCY_CHECKS) {
-			int endCont = getEarliestOutgoing(end.end);
+			int endCont = getEarliestOutgoing(graph.getEdge(flow[endIndex]).end);
 			Assert.assertTrue(exitEarliest >= endCont, "No possible continuation at end!");
 		}
 		
-		// Backward pass for latest times:
+		// Backward pass for latest times, the edges are known to be feasible:
 		int entryLatest = -1;
 		int exitLatest = -1;
-		double backwardWeight = weights.get(flow.getFirst().start);
+		double backwardWeight = getWeight(graph.getEdge(flow[0]).start);
 		current = TMAX;
-		for(Edge edge: CollectionUtil.reverse(flow)) {
-			if (infeasibleEdges.contains(edge)) {
-				return null;
-			}
+		for (int i = flow.length - 1; i >= 0; --i) {
+			Edge edge = graph.getEdge(flow[i]);
 			
-			TimeConstraint constraint = edgeTimeConstraints.get(edge);
-			current = Math.min(current, constraint.exitLatest);
+			current = Math.min(current, this.exitLatest.get(flow[i]));
 			
-			if (edge == end) {
+			if (i == endIndex) {
 				exitLatest = current;
 			}
 			
-			int outCount = countFeasibleEdges(edge.start.getNext());
-			if (outCount == 0) {
-				throw new IllegalStateException("oops");
+			if (Debug.ENABLE_TIME_CONSTRAINS_CONSISTENCY_CHECKS) {
+				backwardWeight /= getFeasibleOutDegree(edge.start);
 			}
-			backwardWeight /= outCount;
-			current = Math.min(current - minDurations.get(edge), getLatestIncoming(edge.start));
+			current = Math.min(current - minDurations[flow[i]], getLatestIncoming(edge.start));
 			
-			if (edge == start) {
+			if (i == startIndex) {
 				entryLatest = current;
 			}
 		}
-		if (entryLatest == -1 || exitLatest == -1) {
-			throw new IllegalStateException("entry / exit nodes not found");
-		}
 		
 		if (Debug.ENABLE_TIME_CONSTRAINS_CONSISTENCY_CHECKS) {
-			int startCont = getLatestIncoming(start.start);
+			int startCont = getLatestIncoming(graph.getEdge(flow[startIndex]).start);
 			Assert.assertTrue(entryLatest <= startCont, "No possible continuation at start!");
-		}
-		
-		if (Debug.ENABLE_TIME_CONSTRAINS_CONSISTENCY_CHECKS) {
 			if (backwardWeight != forwardWeight) {
 				throw new IllegalStateException("Inconsistent weights!");
 			}
 		}
 		
 		if (entryLatest < entryEarliest || exitLatest < exitEarliest) {
-			return null;
+			return false;
 		}
 		
-		return new OccupationTimes(entryEarliest, exitEarliest, entryLatest, exitLatest, forwardWeight);
+		result.set(entryEarliest, exitEarliest, entryLatest, exitLatest, forwardWeight);
+		return true;
 	}
 	
 	public Set<Edge> getInfeasibleEdges() {
-		return infeasibleEdges;
+		HashSet<Edge> result = new HashSet<>();
+		for (int i = infeasibleEdges.nextSetBit(0); i >= 0; i = infeasibleEdges.nextSetBit(i + 1)) {
+			result.add(graph.getEdge(i));
+		}
+		return result;
 	}
 	
 	public boolean isFeasible(Edge edge) {
-		return !infeasibleEdges.contains(edge);
+		return !infeasibleEdges.get(edge.getIndex());
+	}
+	
+	private int getFeasibleOutDegree(Node node) {
+		return feasibleOutDegrees.get(node.getIndex());
 	}
 
 	public boolean areFeasible() {
-		return infeasibleEdges.size() < graph.getEdges().size() && minPenalty <= maxPenalty;
+		return infeasibleEdges.cardinality() < graph.getEdgeCount() && minPenalty <= maxPenalty;
 	}
 	
 	public double getWeight(Node node) {
-		return weights.get(node);
+		return weights.get(node.getIndex());
+	}
+	
+	private int getMinDuration(Edge edge) {
+		return minDurations[edge.getIndex()];
+	}
+	
+	private boolean hasLatestAllowedTime(Node node) {
+		return latestAllowedTimes[node.getIndex()] != NO_LATEST_ALLOWED_TIME;
+	}
+	
+	private int getLatestAllowedTime(Node node) {
+		int time = latestAllowedTimes[node.getIndex()];
+		return (time == NO_LATEST_ALLOWED_TIME) ? TMAX : time;
+	}
+	
+	private void setEntryEarliest(Edge edge, int time) {
+		int index = edge.getIndex();
+		fingerprint ^= Fingerprint.key(3L * index, entryEarliest.get(index)) ^ Fingerprint.key(3L * index, time);
+		entryEarliest.set(index, time);
+		penaltyDirtyNodes.set(edge.end.getIndex());
+	}
+	
+	private void setExitLatest(Edge edge, int time) {
+		int index = edge.getIndex();
+		fingerprint ^= Fingerprint.key(3L * index + 1, exitLatest.get(index))
+				^ Fingerprint.key(3L * index + 1, time);
+		exitLatest.set(index, time);
 	}
 
 	// TODO should this return edges instead?
 	public Set<Node> increaseEarliestEntry(Edge edge, int entryEarliest) {
+		BitSet changedNodes = new BitSet(graph.getNodeCount());
+		increaseEarliestEntry(edge, entryEarliest, changedNodes);
+		return toNodes(changedNodes);
+	}
+
+	/**
+	 * Same as {@link #increaseEarliestEntry(Edge, int)}, but adds the ordinals of the changed nodes
+	 * to {@code changedNodes} instead of returning them.
+	 */
+	public void increaseEarliestEntry(Edge edge, int entryEarliest, BitSet changedNodes) {
 		assertFeasability();
-		TimeConstraint constraint = edgeTimeConstraints.get(edge);
-		if (!isFeasible(edge) || constraint.entryEarliest >= entryEarliest) {
-			return ImmutableCollections.setOf();
+		Propagation propagation = Propagation.acquire(graph);
+		restrictEntryEarliest(propagation, edge, entryEarliest);
+		propagateEntryEarliest(propagation, changedNodes);
+	}
+
+	/**
+	 * Increases the earliest entries of all given edges and propagates them in a single pass. Adds
+	 * the ordinals of the changed nodes to {@code changedNodes}.
+	 */
+	public void increaseEarliestEntries(Map<Edge, Integer> entryEarliest, BitSet changedNodes) {
+		assertFeasability();
+		Propagation propagation = Propagation.acquire(graph);
+		for (Edge edge : entryEarliest.keys()) {
+			restrictEntryEarliest(propagation, edge, entryEarliest.get(edge));
 		}
-		edgeTimeConstraints = edgeTimeConstraints.with(edge, constraint.withEntryEarliest(entryEarliest));
-		
-		final HashSet<Node> changeSet = new HashSet<>();
-		
-		final HashMap<Node, Integer> minTime = new HashMap<>();
-		minTime.put(edge.start, entryEarliest);
-		new ForwardUpdater(edge) {
-			@Override
-			protected void update(Edge edge) {
-				if (!isFeasible(edge)) {
-					return;
+		propagateEntryEarliest(propagation, changedNodes);
+	}
+
+	private void restrictEntryEarliest(Propagation propagation, Edge edge, int entryEarliest) {
+		if (!isFeasible(edge) || getEntryEarliest(edge) >= entryEarliest) {
+			return;
+		}
+		setEntryEarliest(edge, entryEarliest);
+		propagation.restricted.set(edge.getIndex());
+		propagation.raiseNodeTime(edge.start, entryEarliest);
+	}
+
+	/**
+	 * Propagates the increased earliest entries of the restricted edges of the acquired
+	 * propagation, then releases it.
+	 */
+	private void propagateEntryEarliest(Propagation propagation, BitSet changedNodes) {
+		BitSet restricted = propagation.restricted;
+		if (restricted.isEmpty()) {
+			propagation.release();
+			return;
+		}
+		BitSet pending = propagation.pending;
+		try {
+			pending.or(restricted);
+			// Updates only add edges after the current one, so only the edges reachable from the
+			// restricted ones are visited.
+			for (int i = pending.nextSetBit(0); i >= 0; i = pending.nextSetBit(i + 1)) {
+				Edge current = graph.getEdge(i);
+				if (!isFeasible(current)) {
+					continue;
 				}
-				changeSet.add(edge.end);
+				changedNodes.set(current.end.getIndex());
 				
-				// Need to update change set as long as 'now' is lower than earliest entry.
-				int minDuration = minDurations.get(edge);
-				int earliestOutgoingEnd = getEarliestOutgoing(edge.end);
-				int now = minTime.getOrDefault(edge.start, 0) + minDuration;
-				if (now > earliestOutgoingEnd) {
-					minTime.put(edge.end, now);
-					for(Edge e: edge.end.getNext()) {
-						addPending(e);
-					}
+				// Need to update change set as long as 'now' is lower than earliest entry. Keeps the
+				// latest time per node, so that the change set covers all restricted edges.
+				int now = propagation.getNodeTime(current.start) + getMinDuration(current);
+				if (now > getEarliestOutgoing(current.end)) {
+					propagation.raiseNodeTime(current.end, now);
+					propagation.addAll(current.end.getNext());
 				}
 			}
-		}.run();
-
-		changeSet.addAll(updateForIncreasedEarliestEntry(edge));
-		changeSet.add(edge.start);
-		changeSet.add(edge.end);
-		changeSet.addAll(update());
+			pending.clear();
+			for (int i = restricted.nextSetBit(0); i >= 0; i = restricted.nextSetBit(i + 1)) {
+				Edge edge = graph.getEdge(i);
+				if (hasLatestAllowedTime(edge.start)) {
+					propagation.penaltyNodeAffected = true;
+				}
+				pending.set(i);
+				propagation.addNeighbours(edge);
+				setChanged(changedNodes, edge);
+			}
+		} catch (RuntimeException e) {
+			propagation.release();
+			throw e;
+		}
+		propagate(propagation, changedNodes);
+		update(changedNodes);
 		
 		assertFeasability();
-		return changeSet;
 	}
 
 	public Set<Node> decreaseLatestExit(Edge edge, int exitLatest) {
-		TimeConstraint constraint = edgeTimeConstraints.get(edge);
-		if (!isFeasible(edge) || constraint.exitLatest <= exitLatest) {
-			return ImmutableCollections.setOf();
+		BitSet changedNodes = new BitSet(graph.getNodeCount());
+		decreaseLatestExit(edge, exitLatest, changedNodes);
+		return toNodes(changedNodes);
+	}
+
+	/**
+	 * Same as {@link #decreaseLatestExit(Edge, int)}, but adds the ordinals of the changed nodes to
+	 * {@code changedNodes} instead of returning them.
+	 */
+	public void decreaseLatestExit(Edge edge, int exitLatest, BitSet changedNodes) {
+		Propagation propagation = Propagation.acquire(graph);
+		restrictExitLatest(propagation, edge, exitLatest);
+		propagateExitLatest(propagation, changedNodes);
+	}
+
+	/**
+	 * Decreases the latest exits of all given edges and propagates them in a single pass. Adds the
+	 * ordinals of the changed nodes to {@code changedNodes}.
+	 */
+	public void decreaseLatestExits(Map<Edge, Integer> exitLatest, BitSet changedNodes) {
+		Propagation propagation = Propagation.acquire(graph);
+		for (Edge edge : exitLatest.keys()) {
+			restrictExitLatest(propagation, edge, exitLatest.get(edge));
 		}
-		edgeTimeConstraints = edgeTimeConstraints.with(edge, constraint.withExitLatest(exitLatest));
-		
-		final HashSet<Node> changeSet = new HashSet<>();
-		
-		final HashMap<Node, Integer> maxTime = new HashMap<>();
-		maxTime.put(edge.end, exitLatest);
-		new BackwardUpdater(edge) {
-			@Override
-			protected void update(Edge edge) {
-				if (!isFeasible(edge)) {
-					return;
+		propagateExitLatest(propagation, changedNodes);
+	}
+
+	private void restrictExitLatest(Propagation propagation, Edge edge, int exitLatest) {
+		if (!isFeasible(edge) || getExitLatest(edge) <= exitLatest) {
+			return;
+		}
+		setExitLatest(edge, exitLatest);
+		propagation.restricted.set(edge.getIndex());
+		propagation.lowerNodeTime(edge.end, exitLatest);
+	}
+
+	/**
+	 * Propagates the decreased latest exits of the restricted edges of the acquired propagation,
+	 * then releases it.
+	 */
+	private void propagateExitLatest(Propagation propagation, BitSet changedNodes) {
+		BitSet restricted = propagation.restricted;
+		if (restricted.isEmpty()) {
+			propagation.release();
+			return;
+		}
+		BitSet pending = propagation.pending;
+		try {
+			pending.or(restricted);
+			// Updates only add edges before the current one, so only the edges from which the
+			// restricted ones are reachable are visited.
+			for (int i = pending.previousSetBit(graph.getEdgeCount() - 1); i >= 0; i = pending.previousSetBit(i - 1)) {
+				Edge current = graph.getEdge(i);
+				if (!isFeasible(current)) {
+					continue;
 				}
-				changeSet.add(edge.start);
+				changedNodes.set(current.start.getIndex());
 				
-				// Need to update change set as long as 'now' is larger than latest exit.
-				int minDuration = minDurations.get(edge);
-				int latestIncomingStart = getLatestIncoming(edge.start);
-				int now = maxTime.getOrDefault(edge.end, 0) - minDuration;
-				if (now < latestIncomingStart) {
-					maxTime.put(edge.start, now);
-					for(Edge e: edge.start.getPrevious()) {
-						addPending(e);
-					}
+				// Need to update change set as long as 'now' is larger than latest exit. Keeps the
+				// earliest time per node, so that the change set covers all restricted edges.
+				int now = propagation.getNodeTime(current.end) - getMinDuration(current);
+				if (now < getLatestIncoming(current.start)) {
+					propagation.lowerNodeTime(current.start, now);
+					propagation.addAll(current.start.getPrevious());
 				}
-				
 			}
-		}.run();
-		
-		changeSet.addAll(updateForDecreasedLatestExit(edge));
-		changeSet.add(edge.start);
-		changeSet.add(edge.end);
-		changeSet.addAll(update());
+			pending.clear();
+			for (int i = restricted.nextSetBit(0); i >= 0; i = restricted.nextSetBit(i + 1)) {
+				Edge edge = graph.getEdge(i);
+				pending.set(i);
+				propagation.addNeighbours(edge);
+				setChanged(changedNodes, edge);
+			}
+		} catch (RuntimeException e) {
+			propagation.release();
+			throw e;
+		}
+		propagate(propagation, changedNodes);
+		update(changedNodes);
 		
 		assertFeasability();
-		return changeSet;
 	}
 	
-	
-	private HashSet<Node> updateForIncreasedEarliestEntry(Edge edge) {
-		EdgeUpdater updater = new EdgeUpdater();
-		if (latestAllowedTimes.containsKey(edge.start)) {
-			updater.penaltyNodeAffected = true;
+	private static void setChanged(@CheckForNull BitSet changedNodes, Edge edge) {
+		if (changedNodes != null) {
+			changedNodes.set(edge.start.getIndex());
+			changedNodes.set(edge.end.getIndex());
 		}
-		updater.pending.add(edge);
-		updater.pending.addAll(edge.start.getPrevious());
-		updater.pending.addAll(edge.end.getNext());
-		return updater.run();
 	}
 	
-	private HashSet<Node> updateForDecreasedLatestExit(Edge edge) {
-		EdgeUpdater updater = new EdgeUpdater();
-		updater.pending.add(edge);
-		updater.pending.addAll(edge.start.getPrevious());
-		updater.pending.addAll(edge.end.getNext());
-		return updater.run();
+	Set<Node> toNodes(BitSet nodes) {
+		HashSet<Node> result = new HashSet<>();
+		for (int i = nodes.nextSetBit(0); i >= 0; i = nodes.nextSetBit(i + 1)) {
+			result.add(graph.getNode(i));
+		}
+		return result;
 	}
 	
-	private HashSet<Node> updateForNewInfeasible(Set<Edge> edges) {
-		EdgeUpdater updater = new EdgeUpdater();
-		for(Edge edge: edges) {
-			updater.pending.addAll(edge.start.getPrevious());
-			updater.pending.addAll(edge.end.getNext());
+	/**
+	 * Processes the pending edges of the acquired propagation until no more edges change, then
+	 * releases it.
+	 * 
+	 * @param changedNodes receives the ordinals of the nodes whose times changed, if not null
+	 */
+	private void propagate(Propagation propagation, @CheckForNull BitSet changedNodes) {
+		boolean penaltyNodeAffected;
+		try {
+			BitSet pending = propagation.pending;
+			for (int i = pending.nextSetBit(0); i >= 0; i = pending.nextSetBit(0)) {
+				pending.clear(i);
+				process(graph.getEdge(i), propagation, changedNodes);
+			}
+			penaltyNodeAffected = propagation.penaltyNodeAffected;
+		} finally {
+			propagation.release();
+		}
+		// Released before, as this propagates edges which become infeasible.
+		if (penaltyNodeAffected) {
+			updatePathPenalties();
 		}
-		return updater.run();
 	}
 	
-	private class EdgeUpdater {
-		private final HashSet<Edge> pending = new HashSet<>();
-		private final HashSet<Node> changed = new HashSet<>();
-		
-		// TODO we only actually need to trigger this if we increase the node's earliest time!
-		private boolean penaltyNodeAffected = false;
-
-		HashSet<Node> run() {
-			while(!pending.isEmpty()) {
-				Edge edge = pending.getFirst();
-				pending.remove(edge);
-				process(edge);
-			}
-			if (penaltyNodeAffected) {
-				updatePathPenalties();
-				//changed.addAll(GraphConstraints.this.update());
-			}
-			return changed;
+	private void process(Edge edge, Propagation propagation, @CheckForNull BitSet changedNodes) {
+		if (!isFeasible(edge)) {
+			return;
 		}
+		int entryEarliest = getEntryEarliest(edge);
+		int exitLatest = getExitLatest(edge);
+		int minDuration = getMinDuration(edge);
 		
-		private void process(Edge edge) {
-			if (!isFeasible(edge)) {
-				return;
-			}
-			TimeConstraint constraint = edgeTimeConstraints.get(edge);
-			int minDuration = minDurations.get(edge);
-			
-			// Update entryEarliest:
-			if (!edge.start.isSource()) {
-				int earliestIncoming = getEarliestIncoming(edge.start);
-				if (earliestIncoming > constraint.entryEarliest) {
-					constraint = constraint.withEntryEarliest(earliestIncoming);
-					pending.addAll(edge.end.getNext());
-					changed.add(edge.start);
-					changed.add(edge.end);
-					if (latestAllowedTimes.containsKey(edge.start)) {
-						penaltyNodeAffected = true;
-					}
+		// Update entryEarliest:
+		if (!edge.start.isSource()) {
+			int earliestIncoming = getEarliestIncoming(edge.start);
+			if (earliestIncoming > entryEarliest) {
+				entryEarliest = earliestIncoming;
+				setEntryEarliest(edge, entryEarliest);
+				propagation.addAll(edge.end.getNext());
+				setChanged(changedNodes, edge);
+				if (hasLatestAllowedTime(edge.start)) {
+					propagation.penaltyNodeAffected = true;
 				}
 			}
-			
-			// Update exitLatest:
-			if (!edge.end.isSink()) {
-				int latestOutgoing = getLatestOutgoing(edge.end);
-				if (latestOutgoing < constraint.exitLatest) {
-					constraint = constraint.withExitLatest(latestOutgoing);
-					pending.addAll(edge.start.getPrevious());
-					changed.add(edge.start);
-					changed.add(edge.end);
-				}
+		}
+		
+		// Update exitLatest:
+		if (!edge.end.isSink()) {
+			int latestOutgoing = getLatestOutgoing(edge.end);
+			if (latestOutgoing < exitLatest) {
+				exitLatest = latestOutgoing;
+				setExitLatest(edge, exitLatest);
+				propagation.addAll(edge.start.getPrevious());
+				setChanged(changedNodes, edge);
 			}
-			
-			edgeTimeConstraints = edgeTimeConstraints.with(edge, constraint);
-			
-			// Check if edge has become infeasible:
-			if ((constraint.exitLatest - constraint.entryEarliest < minDuration) || 
-				(getLatestIncoming(edge.start) < constraint.entryEarliest) || 
-				(getEarliestOutgoing(edge.end) > constraint.exitLatest)) {
-				markInfeasibleNoUpdate(edge);
-				pending.addAll(edge.start.getPrevious());
-				pending.addAll(edge.end.getNext());
-				if (latestAllowedTimes.containsKey(edge.start)) {
-					penaltyNodeAffected = true;
-				}
+		}
+		
+		// Check if edge has become infeasible:
+		if ((exitLatest - entryEarliest < minDuration) || 
+			(getLatestIncoming(edge.start) < entryEarliest) || 
+			(getEarliestOutgoing(edge.end) > exitLatest)) {
+			markInfeasibleNoUpdate(edge);
+			propagation.addNeighbours(edge);
+			if (hasLatestAllowedTime(edge.start)) {
+				propagation.penaltyNodeAffected = true;
 			}
 		}
 	}
-	
+
 	private int getEarliestIncoming(Node node) {
 		PreConditions.paramCheck(node, "is source", !node.isSource());
 		int earliestEntry = TMAX;
@@ -462,7 +584,7 @@ public class GraphConstraints {
 			if (!isFeasible(prev)) {
 				continue;
 			}
-			int earliestFromPrev = edgeTimeConstraints.get(prev).entryEarliest + minDurations.get(prev); 
+			int earliestFromPrev = getEntryEarliest(prev) + getMinDuration(prev); 
 			earliestEntry = Math.min(earliestEntry, earliestFromPrev);
 		}
 		return earliestEntry;
@@ -475,7 +597,7 @@ public class GraphConstraints {
 			if (!isFeasible(prev)) {
 				continue;
 			}
-			int latestFromPrev = edgeTimeConstraints.get(prev).exitLatest; 
+			int latestFromPrev = getExitLatest(prev); 
 			latestArrival = Math.max(latestArrival, latestFromPrev);
 		}
 		return latestArrival;
@@ -488,7 +610,7 @@ public class GraphConstraints {
 			if (!isFeasible(next)) {
 				continue;
 			}
-			int latestToNext = edgeTimeConstraints.get(next).exitLatest - minDurations.get(next);
+			int latestToNext = getExitLatest(next) - getMinDuration(next);
 			latestExit = Math.max(latestExit, latestToNext);
 		}
 		return latestExit;
@@ -501,7 +623,7 @@ public class GraphConstraints {
 			if (!isFeasible(next)) {
 				continue;
 			}
-			int earliestToNext = edgeTimeConstraints.get(next).entryEarliest;
+			int earliestToNext = getEntryEarliest(next);
 			earliestDeparture = Math.min(earliestDeparture, earliestToNext);
 		}
 		return earliestDeparture;
@@ -511,9 +633,12 @@ public class GraphConstraints {
 		if (!Debug.ENABLE_TIME_CONSTRAINS_CONSISTENCY_CHECKS) {
 			return;
 		}
-		Assert.assertEquals(edgeTimeConstraints.keyCount(), graph.getEdges().size());
+		Assert.assertEquals(entryEarliest.size(), graph.getEdgeCount());
+		Assert.assertTrue(fingerprint == computeFingerprint(), "Fingerprint out of date!");
 		
 		for(Node node: graph.getNodes()) {
+			Assert.assertTrue(getFeasibleOutDegree(node) == countFeasibleEdges(node.getNext()),
+					"Feasible out degree out of date!");
 			if (node.isSource() || node.isSink()) {
 				continue;
 			}
@@ -532,9 +657,10 @@ public class GraphConstraints {
 			if (!isFeasible(edge)) {
 				continue;
 			}
-			TimeConstraint constraint = edgeTimeConstraints.get(edge);
-			int minDuration = minDurations.get(edge);
-			Assert.assertTrue(constraint.exitLatest - constraint.entryEarliest >= minDuration, "min duration violation");
+			int entryEarliest = getEntryEarliest(edge);
+			int exitLatest = getExitLatest(edge);
+			int minDuration = getMinDuration(edge);
+			Assert.assertTrue(exitLatest - entryEarliest >= minDuration, "min duration violation");
 
 			if (!edge.start.isSource()) {
 				int maxExit = 0;
@@ -542,9 +668,9 @@ public class GraphConstraints {
 					if (!isFeasible(prev)) {
 						continue;
 					}
-					maxExit = Math.max(maxExit, edgeTimeConstraints.get(prev).exitLatest);
+					maxExit = Math.max(maxExit, getExitLatest(prev));
 				}
-				Assert.assertTrue(constraint.entryEarliest <= maxExit, "in connection violation %d <= %d", constraint.entryEarliest, maxExit);
+				Assert.assertTrue(entryEarliest <= maxExit, "in connection violation %d <= %d", entryEarliest, maxExit);
 			}
 
 			if (!edge.end.isSink()) {
@@ -553,16 +679,209 @@ public class GraphConstraints {
 					if (!isFeasible(next)) {
 						continue;
 					}
-					minEntry = Math.min(minEntry, edgeTimeConstraints.get(next).entryEarliest);
+					minEntry = Math.min(minEntry, getEntryEarliest(next));
 				}
-				Assert.assertTrue(constraint.exitLatest >= minEntry, "out connection violation %d >= %d", constraint.exitLatest, minEntry);
+				Assert.assertTrue(exitLatest >= minEntry, "out connection violation %d >= %d", exitLatest, minEntry);
 			}
 		}
 		
 	}
 	
+	/**
+	 * Finds the feasible path with the minimum total penalty, scheduling each edge as early as
+	 * possible. Ties in the total penalty are resolved in favor of the path that comes first in the
+	 * order of {@link RouteGraph#generatePaths()} among the paths which are not dominated.
+	 * <p>
+	 * Instead of enumerating all paths, this is a single pass over the topologically sorted nodes.
+	 * Every node keeps the set of partial paths ending in it which are not dominated by another
+	 * one, i.e. which do not arrive later with at least the same delay and path penalty.
+	 */
 	public PathSchedule scheduleMinimumPenaltyPath() {
-		// TODO this could be done much more efficiently..
+		PathLabel best = null;
+		for (PathLabel label : computePathLabels()[graph.getSink().getIndex()]) {
+			if (best == null) {
+				best = label;
+				continue;
+			}
+			int cmp = Double.compare(label.getTotalPenalty(), best.getTotalPenalty());
+			if (cmp < 0 || (cmp == 0 && label.comesBefore(best))) {
+				best = label;
+			}
+		}
+		if (best == null) {
+			throw new IllegalStateException("No feasible path");
+		}
+		
+		Edge[] flow = new Edge[best.depth + 1];
+		int[] nodeTimes = new int[best.depth];
+		for (PathLabel label = best; label != null; label = label.parent) {
+			flow[label.depth] = label.edge;
+			if (label.depth > 0) {
+				nodeTimes[label.depth - 1] = label.departure;
+			}
+		}
+		double penalty = best.getTotalPenalty();
+		if (penalty > 0) {
+			logger.log(Level.INFO, "Path for " + getGraph().getId() + " has penalty "+penalty);
+		}
+		return new PathSchedule(new Path(0, ImmutableCollections.listOf(flow), best.pathPenalty), nodeTimes, penalty);
+	}
+	
+	/**
+	 * @return the number of partial paths {@link #scheduleMinimumPenaltyPath()} keeps at the sink
+	 */
+	int getSinkPathLabelCount() {
+		return computePathLabels()[graph.getSink().getIndex()].size();
+	}
+	
+	/**
+	 * @return the partial paths from the source which are not dominated, indexed by the node they
+	 *         end in
+	 */
+	private ArrayList<PathLabel>[] computePathLabels() {
+		@SuppressWarnings("unchecked")
+		ArrayList<PathLabel>[] labels = new ArrayList[graph.getNodeCount()];
+		for (int i = 0; i < labels.length; ++i) {
+			labels[i] = new ArrayList<>();
+		}
+		
+		for (Edge edge : graph.getSource().getNext()) {
+			if (!isFeasible(edge)) {
+				continue;
+			}
+			int departure = Math.max(0, getEntryEarliest(edge));
+			int arrival = departure + getMinDuration(edge);
+			if (arrival <= getExitLatest(edge)) {
+				int end = edge.end.getIndex();
+				labels[end] = addLabel(labels[end], new PathLabel(null, edge, departure, arrival, 0, 0));
+			}
+		}
+		
+		for (Node node : graph.getTopologicallySortedNodes()) {
+			if (node.isSource() || node.isSink()) {
+				continue;
+			}
+			for (PathLabel label : labels[node.getIndex()]) {
+				for (Edge edge : node.getNext()) {
+					if (!isFeasible(edge)) {
+						continue;
+					}
+					int departure = Math.max(label.arrival, getEntryEarliest(edge));
+					int arrival = departure + getMinDuration(edge);
+					if (arrival > getExitLatest(edge)) {
+						continue;
+					}
+					double delayPenalty = label.delayPenalty
+							+ 1.0 / 60 * Math.max(0, departure - getLatestAllowedTime(node));
+					double pathPenalty = label.pathPenalty + edge.getPenalty();
+					int end = edge.end.getIndex();
+					labels[end] = addLabel(labels[end],
+							new PathLabel(label, edge, departure, arrival, delayPenalty, pathPenalty));
+				}
+			}
+		}
+		return labels;
+	}
+	
+	/** Adds the label to the node's labels unless it is dominated, dropping labels it dominates. */
+	private static ArrayList<PathLabel> addLabel(ArrayList<PathLabel> nodeLabels, PathLabel label) {
+		for (PathLabel other : nodeLabels) {
+			if (other.dominates(label)) {
+				return nodeLabels;
+			}
+		}
+		ArrayList<PathLabel> result = new ArrayList<>(nodeLabels.size() + 1);
+		for (PathLabel other : nodeLabels) {
+			if (!label.dominates(other)) {
+				result.push(other);
+			}
+		}
+		result.push(label);
+		return result;
+	}
+	
+	/** A partial path from the source as seen by {@link #scheduleMinimumPenaltyPath()}. */
+	private static final class PathLabel {
+		@CheckForNull
+		final PathLabel parent;
+		final Edge edge;
+		final int depth;
+		/** Time the last edge is entered. */
+		final int departure;
+		/** Earliest time the end of the last edge is reached. */
+		final int arrival;
+		final double delayPenalty;
+		final double pathPenalty;
+		
+		PathLabel(@CheckForNull PathLabel parent, Edge edge, int departure, int arrival, double delayPenalty,
+				double pathPenalty) {
+			this.parent = parent;
+			this.edge = edge;
+			this.depth = (parent == null) ? 0 : parent.depth + 1;
+			this.departure = departure;
+			this.arrival = arrival;
+			this.delayPenalty = delayPenalty;
+			this.pathPenalty = pathPenalty;
+		}
+		
+		double getTotalPenalty() {
+			return delayPenalty + pathPenalty;
+		}
+		
+		/**
+		 * Both penalties only grow with later arrival, so every continuation of the other path
+		 * is at least as good from this one. The path order only breaks exact ties, so that one
+		 * of two equal labels is kept.
+		 */
+		boolean dominates(PathLabel other) {
+			if (arrival > other.arrival || delayPenalty > other.delayPenalty || pathPenalty > other.pathPenalty) {
+				return false;
+			}
+			if (arrival == other.arrival && delayPenalty == other.delayPenalty && pathPenalty == other.pathPenalty) {
+				return comesBefore(other);
+			}
+			return true;
+		}
+		
+		/**
+		 * Compares two labels ending in the same node by the order in which the depth first
+		 * enumeration of paths visits them.
+		 */
+		boolean comesBefore(PathLabel other) {
+			PathLabel a = this;
+			PathLabel b = other;
+			while (a.depth > b.depth) {
+				a = a.parent;
+			}
+			while (b.depth > a.depth) {
+				b = b.parent;
+			}
+			while (a.parent != b.parent) {
+				a = a.parent;
+				b = b.parent;
+			}
+			if (a == b) {
+				return false;
+			}
+			// Diverging edges start at the same node.
+			List<Edge> choices = a.edge.start.getNext();
+			for (Edge edge : choices) {
+				if (edge == a.edge) {
+					return true;
+				}
+				if (edge == b.edge) {
+					return false;
+				}
+			}
+			throw new IllegalStateException("Edge not found");
+		}
+	}
+	
+	/**
+	 * Enumerates all paths to find the one with the minimum penalty. Exponential in the number of
+	 * route alternatives, only kept as reference for {@link #scheduleMinimumPenaltyPath()}.
+	 */
+	PathSchedule scheduleMinimumPenaltyPathByEnumeration() {
 		RouteGroup routes = graph.generatePaths();
 		HashMap<Path, Double> penalties = new HashMap<>();
 		for(Path path: routes.getPaths()) {
@@ -572,7 +891,7 @@ public class GraphConstraints {
 				penalty = Double.POSITIVE_INFINITY;
 			} else {
 				for (int i = 0; i < nodeTimes.length; ++i) {
-					penalty += 1.0 / 60 * Math.max(0, nodeTimes[i] - latestAllowedTimes.getOrDefault(path.getEdges().get(i).end, TMAX));
+					penalty += 1.0 / 60 * Math.max(0, nodeTimes[i] - getLatestAllowedTime(path.getEdges().get(i).end));
 				}
 				penalty += path.getPenalty();
 			}
@@ -604,18 +923,17 @@ public class GraphConstraints {
 		int now = 0;
 		int i = -1;
 		for(Edge edge: flow) {
-			if (infeasibleEdges.contains(edge)) {
+			if (!isFeasible(edge)) {
 				return null;
 			}
-			TimeConstraint constraint = edgeTimeConstraints.get(edge);
-			now = Math.max(now, constraint.entryEarliest);
+			now = Math.max(now, getEntryEarliest(edge));
 			
 			if (!edge.start.isSource()) {
 				nodeTimes[i] = now;
 			}
 			
-			now = now + minDurations.get(edge);
-			if (now > constraint.exitLatest) {
+			now = now + getMinDuration(edge);
+			if (now > getExitLatest(edge)) {
 				return null;
 			}
 			i++;
@@ -624,39 +942,59 @@ public class GraphConstraints {
 	}
 
 	public Set<Node> markInfeasible(Iterable<Edge> edges) {
-		HashSet<Edge> newInfeasible = new HashSet<>();
+		BitSet changedNodes = new BitSet(graph.getNodeCount());
+		markInfeasible(edges, changedNodes);
+		return toNodes(changedNodes);
+	}
+
+	/**
+	 * Same as {@link #markInfeasible(Iterable)}, but adds the ordinals of the changed nodes to
+	 * {@code changedNodes} instead of returning them.
+	 */
+	public void markInfeasible(Iterable<Edge> edges, BitSet changedNodes) {
+		Propagation propagation = Propagation.acquire(graph);
 		for(Edge e: edges) {
 			if (markInfeasibleNoUpdate(e)) {
-				newInfeasible.add(e);
+				propagation.addNeighbours(e);
 			}
 		}
-		updateForNewInfeasible(newInfeasible);
-		return update();
+		propagate(propagation, null);
+		update(changedNodes);
 	}
 	
-	
 	public Set<Node> setMaxPenalty(double penalty) {
+		BitSet changedNodes = new BitSet(graph.getNodeCount());
+		setMaxPenalty(penalty, changedNodes);
+		return toNodes(changedNodes);
+	}
+
+	/**
+	 * Same as {@link #setMaxPenalty(double)}, but adds the ordinals of the changed nodes to
+	 * {@code changedNodes} instead of returning them.
+	 */
+	public void setMaxPenalty(double penalty, BitSet changedNodes) {
 		PreConditions.conditionCheck("Tried to increase max penalty!", Util.penaltyLess(penalty, maxPenalty));
 		if (penalty >= maxPenalty) {
-			return ImmutableCollections.setOf();
+			return;
 		}
+		fingerprint ^= Fingerprint.key(MAX_PENALTY_POSITION, maxPenalty)
+				^ Fingerprint.key(MAX_PENALTY_POSITION, penalty);
 		this.maxPenalty = penalty;
+		maxPenaltyDecreased = true;
 
-		HashSet<Node> changes = updateMaxTimes();
-		changes.addAll(update());
+		updateMaxTimes(changedNodes);
+		update(changedNodes);
 		assertNotDirty();
-		return changes;
 	}
 	
-	private HashSet<Node> updateMaxTimes() {
-		HashSet<Node> changed = new HashSet<>();
+	private void updateMaxTimes(BitSet changedNodes) {
 		for (Node node : CollectionUtil.reverse(graph.getTopologicallySortedNodes())) {
 			if (node.isSource() || node.isSink()) {
 				continue;
 			}
-			PenaltyTimeSet pts = penaltyTimeSets.get(node);
-			Integer latestAllowedTime = latestAllowedTimes.get(node);
-			if (latestAllowedTime != null) {
+			PenaltyTimeSet pts = penaltyTimeSets.get(node.getIndex());
+			if (hasLatestAllowedTime(node)) {
+				int latestAllowedTime = getLatestAllowedTime(node);
 				if (pts == null) {
 					pts = new PenaltyTimeSet(latestAllowedTime);
 				} else {
@@ -666,33 +1004,39 @@ public class GraphConstraints {
 			
 			int latest = pts.maximumTime(maxPenalty);
 			for (Edge prev : node.getPrevious()) {
-				changed.addAll(decreaseLatestExit(prev, latest));
+				decreaseLatestExit(prev, latest, changedNodes);
 			}
 			
 			for (Edge prev : node.getPrevious()) {
-				Integer edgeTime = minDurations.get(prev);
+				int edgeTime = getMinDuration(prev);
 				
 				// FIXME penaltyTimeSets should never change
-				PenaltyTimeSet min = PenaltyTimeSet.min(pts.subtract(edgeTime), penaltyTimeSets.get(prev.start));
-				penaltyTimeSets = penaltyTimeSets.with(prev.start, min);
+				PenaltyTimeSet min = PenaltyTimeSet.min(pts.subtract(edgeTime), penaltyTimeSets.get(prev.start.getIndex()));
+				setPenaltyTimeSet(prev.start, min);
 			}
 		}
-		return changed;
+	}
+	
+	private void setPenaltyTimeSet(Node node, PenaltyTimeSet penaltyTimeSet) {
+		penaltyTimeSets.set(node.getIndex(), penaltyTimeSet);
 	}
 	
 	private boolean markInfeasibleNoUpdate(Edge edge) {
-		PersistentSet<Edge> updatedEdges = infeasibleEdges.with(edge);
-		if (updatedEdges == infeasibleEdges) {
+		if (!isFeasible(edge)) {
 			return false;
 		}
-		infeasibleEdges = updatedEdges;
+		infeasibleEdges.set(edge.getIndex());
+		feasibleOutDegrees.set(edge.start.getIndex(), getFeasibleOutDegree(edge.start) - 1);
+		fingerprint ^= Fingerprint.key(3L * edge.getIndex() + 2, 1);
+		penaltyDirtyNodes.set(edge.start.getIndex());
+		penaltyDirtyNodes.set(edge.end.getIndex());
 		markedEdgeInfeasibleSinceLastUpdate = true;
 		return true;
 	}
 	
 	private boolean hasFeasibleEdge(Iterable<Edge> edges) {
 		for(Edge edge: edges) {
-			if (!infeasibleEdges.contains(edge)) {
+			if (isFeasible(edge)) {
 				return true;
 			}
 		}
@@ -702,31 +1046,34 @@ public class GraphConstraints {
 	private int countFeasibleEdges(Iterable<Edge> edges) {
 		int feasible = 0;
 		for(Edge edge: edges) {
-			if (!infeasibleEdges.contains(edge)) {
+			if (isFeasible(edge)) {
 				feasible++;
 			}
 		}
 		return feasible;
 	}
 	
-	private Set<Node> update() {
+	/**
+	 * Recomputes penalties and weights if edges have become infeasible, which changes all nodes.
+	 */
+	private void update(BitSet changedNodes) {
 		if (!markedEdgeInfeasibleSinceLastUpdate || !areFeasible()) {
-			return ImmutableCollections.setOf();
+			return;
 		}
 		updatePathPenalties();
 		updateWeights();
 		markedEdgeInfeasibleSinceLastUpdate = false;
-		return graph.getNodes();
+		changedNodes.set(0, graph.getNodeCount());
 	}
 
 	private Set<Node> updateWeights() {
 		HashSet<Node> startNodes = new HashSet<>();
 		for(Edge edge: graph.getSource().getNext()) {
 			Node node = edge.end;
-			if (hasFeasibleEdge(node.getNext())) {
+			if (getFeasibleOutDegree(node) > 0) {
 				startNodes.add(node);
 			} else {
-				weights = weights.with(node, 0.0);
+				weights.set(node.getIndex(), 0.0);
 			}
 		}
 
@@ -734,8 +1081,8 @@ public class GraphConstraints {
 		// Weights
 		for (Node node : startNodes) {
 			double weight = 1.0 / startNodes.size();
-			if (weights.get(node) != weight) {
-				weights = weights.with(node, weight);
+			if (getWeight(node) != weight) {
+				weights.set(node.getIndex(), weight);
 				changed.add(node);
 			}
 		}
@@ -746,13 +1093,13 @@ public class GraphConstraints {
 			}
 			double weight = 0;
 			for (Edge edge : node.getPrevious()) {
-				if (infeasibleEdges.contains(edge)) {
+				if (!isFeasible(edge)) {
 					continue;
 				}
-				weight += weights.get(edge.start) / countFeasibleEdges(edge.start.getNext());
+				weight += getWeight(edge.start) / getFeasibleOutDegree(edge.start);
 			}
-			if (weights.get(node) != weight) {
-				weights = weights.with(node, weight);
+			if (getWeight(node) != weight) {
+				weights.set(node.getIndex(), weight);
 				changed.add(node);
 			}
 		}
@@ -761,79 +1108,94 @@ public class GraphConstraints {
 		return graph.getNodes();
 	}
 	
+	/**
+	 * Brings the path penalties up to date with the changes since the last update. Only the nodes
+	 * downstream (forward penalties) and upstream (backward penalties) of nodes whose incoming times
+	 * or incident edges changed are recomputed, stopping where a penalty stays the same. Only nodes
+	 * whose penalties changed are checked against the max penalty, unless it decreased.
+	 */
 	private void updatePathPenalties() {
+		Propagation propagation = Propagation.acquire(graph);
+		BitSet nodes = propagation.penaltyNodes;
+		BitSet changed = propagation.penaltyChangedNodes;
+		
 		// Forward pass for path penalty
-		for (Node node : graph.getTopologicallySortedNodes()) {
+		nodes.or(penaltyDirtyNodes);
+		for (int i = nodes.nextSetBit(0); i >= 0; i = nodes.nextSetBit(i + 1)) {
+			Node node = graph.getNode(i);
 			if (node.isSource()) {
 				continue;
 			}
-			
-			double incomingPenalty = Double.POSITIVE_INFINITY;
-			for (Edge edge : node.getPrevious()) {
-				if (infeasibleEdges.contains(edge)) {
-					continue;
-				}
-				double penalty = penaltyForward.getOrDefault(edge.start, Util.ZERO) + edge.getPenalty();
-				incomingPenalty = Math.min(incomingPenalty, penalty);
+			double totalPenalty = computePenaltyForward(node);
+			if (totalPenalty == penaltyForward.get(i)) {
+				continue;
 			}
-			// TODO could cache delay penalty for node instead of calculating twice
-			double delayPenalty = 1.0 / 60
-					* Math.max(0, getEarliestIncoming(node) - latestAllowedTimes.getOrDefault(node, TMAX));
-			double totalPenalty = incomingPenalty + delayPenalty;
-			if (totalPenalty != penaltyForward.getOrDefault(node, Util.ZERO)) {
-				penaltyForward = penaltyForward.with(node, totalPenalty);
+			penaltyForward.set(i, totalPenalty);
+			changed.set(i);
+			for (Edge edge : node.getNext()) {
+				nodes.set(edge.end.getIndex());
 			}
-		}			
+		}
 		
 		// Backward pass for penalty
-		for (Node node : CollectionUtil.reverse(graph.getTopologicallySortedNodes())) {
+		nodes.clear();
+		nodes.or(penaltyDirtyNodes);
+		for (int i = nodes.length() - 1; i >= 0; i = nodes.previousSetBit(i - 1)) {
+			Node node = graph.getNode(i);
 			if (node.isSource() || node.isSink()) {
 				continue;
 			}
-			double outgoingPenalty = Double.POSITIVE_INFINITY;
-			for (Edge edge : node.getNext()) {
-				if (infeasibleEdges.contains(edge)) {
-					continue;
-				}
-				double penalty = penaltyBackward.getOrDefault(edge.end, Util.ZERO) + edge.getPenalty();
-				outgoingPenalty = Math.min(penalty, outgoingPenalty);
+			double totalPenalty = computePenaltyBackward(node);
+			if (totalPenalty == penaltyBackward.get(i)) {
+				continue;
 			}
-			double delayPenalty = 1.0 / 60
-					* Math.max(0, getEarliestIncoming(node) - latestAllowedTimes.getOrDefault(node, TMAX));
-			double totalPenalty = outgoingPenalty + delayPenalty;
-			if (totalPenalty != penaltyBackward.getOrDefault(node, Util.ZERO)) {
-				penaltyBackward = penaltyBackward.with(node, totalPenalty);
+			penaltyBackward.set(i, totalPenalty);
+			changed.set(i);
+			for (Edge edge : node.getPrevious()) {
+				nodes.set(edge.start.getIndex());
 			}
-		}	
+		}
+		penaltyDirtyNodes.clear();
 		
 		double minStartPenalty = Double.POSITIVE_INFINITY;
 		for(Edge edge: graph.getSource().getNext()) {
-			minStartPenalty = Math.min(minStartPenalty, penaltyBackward.getOrDefault(edge.end, Util.ZERO));
+			minStartPenalty = Math.min(minStartPenalty, penaltyBackward.get(edge.end.getIndex()));
 		}
 		
 		if (Debug.ENABLE_TIME_CONSTRAINS_CONSISTENCY_CHECKS) {
 			double minEndPenalty = Double.POSITIVE_INFINITY;
 			for(Edge edge: graph.getSink().getPrevious()) {
-				minEndPenalty = Math.min(minEndPenalty, penaltyForward.getOrDefault(edge.start, Util.ZERO));
+				minEndPenalty = Math.min(minEndPenalty, penaltyForward.get(edge.start.getIndex()));
 			}
 			Assert.assertTrue(Util.penaltyEquals(minStartPenalty, minEndPenalty),
 					"Start and end penalty do not match! %s vs %s", minStartPenalty, minEndPenalty);
+			for (Node node : graph.getNodes()) {
+				Assert.assertTrue(node.isSource() || penaltyForward.get(node.getIndex()) == computePenaltyForward(node),
+						"Forward penalty out of date!");
+				Assert.assertTrue(node.isSource() || node.isSink()
+						|| penaltyBackward.get(node.getIndex()) == computePenaltyBackward(node),
+						"Backward penalty out of date!");
+			}
 		}
 		
-		HashSet<Edge> newInfeasible = new HashSet<Edge>();
-		for (Node node : graph.getNodes()) {
+		if (maxPenaltyDecreased) {
+			changed.set(0, graph.getNodeCount());
+			maxPenaltyDecreased = false;
+		}
+		for (int i = changed.nextSetBit(0); i >= 0; i = changed.nextSetBit(i + 1)) {
+			Node node = graph.getNode(i);
 			// TODO check for the edges instead of nodes.
-			double totalPenalty = penaltyBackward.getOrDefault(node, Util.ZERO) 
-				+ penaltyForward.getOrDefault(node, Util.ZERO); 
+			double totalPenalty = penaltyBackward.get(node.getIndex()) 
+				+ penaltyForward.get(node.getIndex()); 
 			if (totalPenalty > maxPenalty) {
 				for (Edge e: node.getNext()) {
 					if (markInfeasibleNoUpdate(e)) {
-						newInfeasible.add(e);
+						propagation.addNeighbours(e);
 					}
 				}
 				for (Edge e: node.getPrevious()) {
 					if (markInfeasibleNoUpdate(e)) {
-						newInfeasible.add(e);
+						propagation.addNeighbours(e);
 					}
 				}
 			}
@@ -842,61 +1204,112 @@ public class GraphConstraints {
 			minPenalty = minStartPenalty;
 			//logger.log(Level.INFO, "Min penalty for " + graph.getId() + " is " + minPenalty);
 		}
-		if (!newInfeasible.isEmpty()) {
-			// TODO do we care about changed nodes?
-			updateForNewInfeasible(newInfeasible);
-		}
+		// TODO do we care about changed nodes?
+		propagate(propagation, null);
 	}
 
-	private abstract class Updater {
-		private final HashSet<Edge> pending = new HashSet<>();
+	private double computePenaltyForward(Node node) {
+		double incomingPenalty = Double.POSITIVE_INFINITY;
+		for (Edge edge : node.getPrevious()) {
+			if (!isFeasible(edge)) {
+				continue;
+			}
+			double penalty = penaltyForward.get(edge.start.getIndex()) + edge.getPenalty();
+			incomingPenalty = Math.min(incomingPenalty, penalty);
+		}
+		return incomingPenalty + getDelayPenalty(node);
+	}
 
-		Updater(Edge edge) {
-			pending.add(edge);
+	private double computePenaltyBackward(Node node) {
+		double outgoingPenalty = Double.POSITIVE_INFINITY;
+		for (Edge edge : node.getNext()) {
+			if (!isFeasible(edge)) {
+				continue;
+			}
+			double penalty = penaltyBackward.get(edge.end.getIndex()) + edge.getPenalty();
+			outgoingPenalty = Math.min(penalty, outgoingPenalty);
 		}
+		return outgoingPenalty + getDelayPenalty(node);
+	}
 
-		void run(List<Edge> sortedEdges) {
-			for (Edge edge: sortedEdges) {
-				if (pending.remove(edge) && isFeasible(edge)) {
-					update(edge);
-				}
+	// TODO could cache delay penalty for node instead of calculating twice
+	private double getDelayPenalty(Node node) {
+		return 1.0 / 60 * Math.max(0, getEarliestIncoming(node) - getLatestAllowedTime(node));
+	}
 
-				if (pending.isEmpty()) {
-					break;
-				}
+	/**
+	 * Reusable work space of the time propagation, one per thread so that propagating does not
+	 * allocate. It must be released before it is acquired again on the same thread.
+	 */
+	private static final class Propagation {
+		private static final ThreadLocal<Propagation> instances = ThreadLocal.withInitial(Propagation::new);
+
+		/** Ordinals of the edges to process. As ordinals follow the topological order, iterating the
+		 * set visits the edges in topological order. */
+		final BitSet pending = new BitSet();
+		/** Ordinals of the edges whose bounds were restricted directly. */
+		final BitSet restricted = new BitSet();
+		/** Ordinals of the nodes whose path penalties are to be recomputed. */
+		final BitSet penaltyNodes = new BitSet();
+		/** Ordinals of the nodes whose path penalties changed. */
+		final BitSet penaltyChangedNodes = new BitSet();
+		/** Ordinals of the nodes which have a time in {@link #nodeTimes}. */
+		private final BitSet timedNodes = new BitSet();
+		private int[] nodeTimes = new int[0];
+		// TODO we only actually need to trigger this if we increase the node's earliest time!
+		boolean penaltyNodeAffected = false;
+		private boolean acquired = false;
+
+		static Propagation acquire(RouteGraph graph) {
+			Propagation propagation = instances.get();
+			PreConditions.conditionCheck("Propagation is already in use!", !propagation.acquired);
+			propagation.acquired = true;
+			if (propagation.nodeTimes.length < graph.getNodeCount()) {
+				propagation.nodeTimes = new int[graph.getNodeCount()];
 			}
-			done();
+			return propagation;
 		}
 
-		protected abstract void run();
-
-		protected abstract void update(Edge edge);
-		
-		protected void done() {}
+		void release() {
+			pending.clear();
+			restricted.clear();
+			timedNodes.clear();
+			penaltyNodes.clear();
+			penaltyChangedNodes.clear();
+			penaltyNodeAffected = false;
+			acquired = false;
+		}
 
-		protected void addPending(Edge edge) {
-			pending.add(edge);
+		void addAll(List<Edge> edges) {
+			for (int i = 0; i < edges.size(); ++i) {
+				pending.set(edges.get(i).getIndex());
+			}
 		}
 
-	}
+		void addNeighbours(Edge edge) {
+			addAll(edge.start.getPrevious());
+			addAll(edge.end.getNext());
+		}
 
-	private abstract class ForwardUpdater extends Updater {
-		ForwardUpdater(Edge start) {
-			super(start);
+		int getNodeTime(Node node) {
+			return timedNodes.get(node.getIndex()) ? nodeTimes[node.getIndex()] : 0;
 		}
 
-		public final void run() {
-			run(graph.getTopologicallySortedEdges());
+		private void setNodeTime(Node node, int time) {
+			timedNodes.set(node.getIndex());
+			nodeTimes[node.getIndex()] = time;
 		}
-	}
 
-	private abstract class BackwardUpdater extends Updater {
-		BackwardUpdater(Edge end) {
-			super(end);
+		void raiseNodeTime(Node node, int time) {
+			if (!timedNodes.get(node.getIndex()) || nodeTimes[node.getIndex()] < time) {
+				setNodeTime(node, time);
+			}
 		}
 
-		public final void run() {
-			run(CollectionUtil.reverse(graph.getTopologicallySortedEdges()));
+		void lowerNodeTime(Node node, int time) {
+			if (!timedNodes.get(node.getIndex()) || nodeTimes[node.getIndex()] > time) {
+				setNodeTime(node, time);
+			}
 		}
 	}
 	
@@ -923,29 +1336,34 @@ public class GraphConstraints {
 		final Map<Edge, Integer> minDurations;
 
 		final HashMap<String, SectionRequirement> requirements = new HashMap<>();
-		final HashMap<Edge, TimeConstraint> timeConstraints = new HashMap<>();
-		final HashMap<Node, Double> weights = new HashMap<>();
+		final int[] entryEarliest;
+		final int[] exitLatest;
+		final double[] weights;
 
 		Builder(ServiceIntention intention, RouteGraph graph, Map<Edge, Integer> minDurations) {
 			this.intention = intention;
 			this.graph = graph;
 			this.minDurations = minDurations;
+			this.entryEarliest = new int[graph.getEdgeCount()];
+			this.exitLatest = new int[graph.getEdgeCount()];
+			Arrays.fill(exitLatest, TMAX);
+			this.weights = new double[graph.getNodeCount()];
 		}
 
 		GraphConstraints build() {
 			List<Node> sortedNodes = graph.getTopologicallySortedNodes();
 
 			// Weights
-			weights.put(graph.getSource(), 1.0);
-			weights.put(graph.getSink(), 1.0);
+			weights[graph.getSource().getIndex()] = 1.0;
+			weights[graph.getSink().getIndex()] = 1.0;
 
 			for (Node node : sortedNodes) {
 				if (!node.isSource()) {
 					double weight = 0;
 					for (Node prev : node.getPreviousNodes()) {
-						weight += weights.get(prev) / prev.getNext().size();
+						weight += weights[prev.getIndex()] / prev.getNext().size();
 					}
-					weights.put(node, weight);
+					weights[node.getIndex()] = weight;
 				}
 			}
 
@@ -960,29 +1378,29 @@ public class GraphConstraints {
 				}
 			}
 			
-			HashMap<Node, Integer> latestAllowedTimes = new HashMap<>();
-			PersistentMap<Node, PenaltyTimeSet> penaltyTimeSets = PersistentHashMap.empty();
+			int[] latestAllowedTimes = new int[graph.getNodeCount()];
+			Arrays.fill(latestAllowedTimes, NO_LATEST_ALLOWED_TIME);
 			for (Edge edge : graph.getEdges()) {
 				SectionRequirement r = getSectionRequirement(edge);
 				if (!r.getEntryEarliest().isEmpty()) {
 					int t = TimeUtil.parseTime(r.getEntryEarliest());
-					timeConstraints.put(edge, getTimeConstraint(edge).withEntryEarliest(t));
+					increaseEntryEarliest(edge, t);
 				}
 				if (!r.getExitEarliest().isEmpty()) {
 					int t = TimeUtil.parseTime(r.getExitEarliest());
 					// FIXME check if exit earliest is always also set as entry earliest on next
 					for(Edge next: edge.end.getNext()) {
-						timeConstraints.put(next, getTimeConstraint(next).withEntryEarliest(t));
+						increaseEntryEarliest(next, t);
 					}
 				}
 				if (!r.getEntryLatest().isEmpty()) {
 					// FIXME there could also be difference between entry and exit times here
 					int t = TimeUtil.parseTime(r.getEntryLatest());
-					latestAllowedTimes.put(edge.start, t);
+					latestAllowedTimes[edge.start.getIndex()] = t;
 				}
 				if (!r.getExitLatest().isEmpty()) {
 					int t = TimeUtil.parseTime(r.getExitLatest());
-					latestAllowedTimes.put(edge.end, t);
+					latestAllowedTimes[edge.end.getIndex()] = t;
 				}
 			}
 
@@ -995,34 +1413,48 @@ public class GraphConstraints {
 				int earlistArrival = TMAX;
 				for(Edge prev: node.getPrevious()) {
 					earlistArrival = Math.min(earlistArrival,
-							getTimeConstraint(prev).entryEarliest + minDurations.get(prev));
+							entryEarliest[prev.getIndex()] + minDurations.get(prev));
 				}
 				
 				for (Edge next : node.getNext()) {
-					timeConstraints.put(next, getTimeConstraint(next).withEntryEarliest(earlistArrival));
+					increaseEntryEarliest(next, earlistArrival);
 				}
 			}
 			
-			return new GraphConstraints(graph, 
-					PersistentHashMap.copyOf(minDurations),
-					PersistentHashMap.copyOf(weights),
-					PersistentHashMap.copyOf(timeConstraints),
-					PersistentHashSet.empty(),
-					PersistentHashMap.empty(),
-					PersistentHashMap.empty(),
+			int[] edgeMinDurations = new int[graph.getEdgeCount()];
+			for (Edge edge : graph.getEdges()) {
+				edgeMinDurations[edge.getIndex()] = minDurations.get(edge);
+			}
+			
+			int[] outDegrees = new int[graph.getNodeCount()];
+			for (Node node : graph.getNodes()) {
+				outDegrees[node.getIndex()] = node.getNext().size();
+			}
+			
+			// All path penalties are computed initially.
+			BitSet penaltyDirtyNodes = new BitSet(graph.getNodeCount());
+			penaltyDirtyNodes.set(0, graph.getNodeCount());
+			GraphConstraints constraints = new GraphConstraints(graph, 
+					edgeMinDurations,
 					latestAllowedTimes,
-					penaltyTimeSets,
+					new ChunkedDoubleArray(weights),
+					new ChunkedIntArray(entryEarliest),
+					new ChunkedIntArray(exitLatest),
+					new BitSet(graph.getEdgeCount()),
+					new ChunkedIntArray(outDegrees),
+					new ChunkedDoubleArray(new double[graph.getNodeCount()]),
+					new ChunkedDoubleArray(new double[graph.getNodeCount()]),
+					penaltyDirtyNodes,
+					new ChunkedArray<PenaltyTimeSet>(graph.getNodeCount()),
 					Double.POSITIVE_INFINITY,
 					0.0);
+			constraints.fingerprint = constraints.computeFingerprint();
+			return constraints;
 		}
 
-		private TimeConstraint getTimeConstraint(Edge edge) {
-			TimeConstraint c = timeConstraints.get(edge);
-			if (c == null) {
-				c = new TimeConstraint();
-				timeConstraints.put(edge, c);
-			}
-			return c;
+		private void increaseEntryEarliest(Edge edge, int time) {
+			int index = edge.getIndex();
+			entryEarliest[index] = Math.max(entryEarliest[index], time);
 		}
 
 		private SectionRequirement getSectionRequirement(Edge edge) {
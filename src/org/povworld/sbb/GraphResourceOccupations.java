@@ -23,6 +23,9 @@ public class GraphResourceOccupations {
 	public static class ResourceOccupation {
 		public final String intention;
 		public final String resource;
+		// Dense indices of intention and resource, see Problem.
+		public final int intentionIndex;
+		public final int resourceIndex;
 
 		public final Edge start;
 		public final Edge end;
@@ -30,15 +33,39 @@ public class GraphResourceOccupations {
 
 		public final int minDuration;
 
-		public ResourceOccupation(String intention, String resource, Edge start, Edge end, ImmutableList<Edge> flow,
-				int minDuration) {
+		// The flow compiled for GraphConstraints#getOccupationTimes: the ordinals of its edges and
+		// the positions of start and end in it, or -1 if they are not part of the flow.
+		final int[] flowEdges;
+		final int flowStartIndex;
+		final int flowEndIndex;
+
+		public ResourceOccupation(String intention, int intentionIndex, String resource, int resourceIndex, Edge start,
+				Edge end, ImmutableList<Edge> flow, int minDuration) {
 			PreConditions.paramNotEmpty(flow);
 			this.intention = intention;
 			this.resource = resource;
+			this.intentionIndex = intentionIndex;
+			this.resourceIndex = resourceIndex;
 			this.start = start;
 			this.end = end;
 			this.flow = flow;
 			this.minDuration = minDuration;
+
+			this.flowEdges = new int[flow.size()];
+			int flowStartIndex = -1;
+			int flowEndIndex = -1;
+			for (int i = 0; i < flow.size(); ++i) {
+				Edge edge = flow.get(i);
+				flowEdges[i] = edge.getIndex();
+				if (edge == start) {
+					flowStartIndex = i;
+				}
+				if (edge == end) {
+					flowEndIndex = i;
+				}
+			}
+			this.flowStartIndex = flowStartIndex;
+			this.flowEndIndex = flowEndIndex;
 		}
 
 		public Edge getStart() {
@@ -95,8 +122,9 @@ public class GraphResourceOccupations {
 		return occupationsByEndNode.get(node);
 	}
 
-	public static GraphResourceOccupations create(RouteGraph graph, ServiceIntention intention) {
-		return new Builder(graph, intention).build();
+	public static GraphResourceOccupations create(RouteGraph graph, ServiceIntention intention, int intentionIndex,
+			SymbolTable resources) {
+		return new Builder(graph, intention, intentionIndex, resources).build();
 	}
 	
 	public static Map<Edge, Integer> findEdgeMinDurations(RouteGraph graph, ServiceIntention intention) {
@@ -126,14 +154,18 @@ public class GraphResourceOccupations {
 	private static class Builder {
 		private final RouteGraph graph;
 		private final ServiceIntention intention;
+		private final int intentionIndex;
+		private final SymbolTable resources;
 		private final Map<Edge, Integer> minDurations;
 		private final HashMultiMap<String, ResourceOccupation> occupationsByResource = new HashMultiMap<>();
 		private final HashMultiMap<Node, ResourceOccupation> occupationsByStartNode = new HashMultiMap<>();
 		private final HashMultiMap<Node, ResourceOccupation> occupationsByEndNode = new HashMultiMap<>();
 
-		public Builder(RouteGraph graph, ServiceIntention intention) {
+		public Builder(RouteGraph graph, ServiceIntention intention, int intentionIndex, SymbolTable resources) {
 			this.graph = graph;
 			this.intention = intention;
+			this.intentionIndex = intentionIndex;
+			this.resources = resources;
 			this.minDurations = findEdgeMinDurations(graph, intention);
 		}
 
@@ -188,16 +220,16 @@ public class GraphResourceOccupations {
 							minDuration + minDurations.get(edge));
 				}
 			} else if (outgoingCount == 0) {
-				addOccupation(new ResourceOccupation(intention.getId(), resource, start, current,
-						flow, minDuration));
+				addOccupation(new ResourceOccupation(intention.getId(), intentionIndex, resource,
+						resources.indexOf(resource), start, current, flow, minDuration));
 			} else {
 				for (Edge edge : current.end.getNext()) {
 					if (edgeOccupies(edge, resource)) {
 						traceResourceOccupation(start, flow.with(edge), edge, resource,
 								minDuration + minDurations.get(edge));
 					} else {
-						addOccupation(new ResourceOccupation(intention.getId(), resource, start, current,
-								flow.with(edge), minDuration));
+						addOccupation(new ResourceOccupation(intention.getId(), intentionIndex, resource,
+								resources.indexOf(resource), start, current, flow.with(edge), minDuration));
 					}
 				}
 			}
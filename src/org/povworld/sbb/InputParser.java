@@ -1,76 +1,445 @@
 package org.povworld.sbb;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.Map.Entry;
+import java.io.Reader;
+import java.util.function.Consumer;
 
-import org.povworld.sbb.Input.Scenario.Builder;
 import org.povworld.sbb.Input.Connection;
+import org.povworld.sbb.Input.Parameters;
 import org.povworld.sbb.Input.Resource;
+import org.povworld.sbb.Input.ResourceOccupations;
 import org.povworld.sbb.Input.Route;
 import org.povworld.sbb.Input.RoutePath;
 import org.povworld.sbb.Input.RouteSection;
+import org.povworld.sbb.Input.Scenario;
 import org.povworld.sbb.Input.SectionRequirement;
 import org.povworld.sbb.Input.ServiceIntention;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-import com.google.protobuf.util.JsonFormat;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
+/**
+ * Reads a scenario in a single streaming pass directly into the protobuf builders.
+ * <p>
+ * Accepts the same input as protobuf's {@code JsonFormat} with unknown fields ignored: field
+ * names in proto or lower camel case, null for absent values, numbers for string fields and
+ * single element arrays for singular fields. The time strings are parsed into their
+ * {@code *_seconds} fields on the fly.
+ */
 public class InputParser {
 
+	private interface ElementParser<T> {
+		T parse(JsonReader reader) throws IOException;
+	}
+
 	public static Input.Scenario parseScenario(File file) throws IOException {
-		JsonElement json = new JsonParser().parse(new FileReader(file));
-		cleanNullElements(json);
-		Builder builder = Input.Scenario.newBuilder();
-		JsonFormat.parser().ignoringUnknownFields().merge(json.toString(), builder);
-		parseTimeStrings(builder);
+		try (Reader reader = new BufferedReader(new FileReader(file))) {
+			return parseScenario(reader);
+		}
+	}
+
+	static Input.Scenario parseScenario(Reader input) throws IOException {
+		JsonReader reader = new JsonReader(input);
+		Scenario.Builder builder = Scenario.newBuilder();
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = nextName(reader);
+			if (skipNull(reader)) {
+				continue;
+			}
+			switch (name) {
+			case "label":
+				builder.setLabel(nextString(reader));
+				break;
+			case "hash":
+				builder.setHash(nextInt(reader));
+				break;
+			case "service_intentions":
+				parseArray(reader, InputParser::parseServiceIntention, builder::addServiceIntentions);
+				break;
+			case "routes":
+				parseArray(reader, InputParser::parseRoute, builder::addRoutes);
+				break;
+			case "resources":
+				parseArray(reader, InputParser::parseResource, builder::addResources);
+				break;
+			case "parameters":
+				builder.setParameters(parseParameters(reader));
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
 		return builder.build();
 	}
 
-	private static void cleanNullElements(JsonElement jsonElement) {
-		if (jsonElement.isJsonObject()) {
-			JsonObject obj = jsonElement.getAsJsonObject();
-			for (Entry<String, JsonElement> e : obj.entrySet()) {
-				cleanNullElements(e.getValue());
+	private static ServiceIntention parseServiceIntention(JsonReader reader) throws IOException {
+		ServiceIntention.Builder builder = ServiceIntention.newBuilder();
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = nextName(reader);
+			if (skipNull(reader)) {
+				continue;
 			}
-		} else if (jsonElement.isJsonArray()) {
-			JsonArray array = jsonElement.getAsJsonArray();
-			if (array.size() == 1 && array.get(0).isJsonNull()) {
-				array.remove(0);
-			} else {
-				for (JsonElement e : array) {
-					cleanNullElements(e);
-				}
+			switch (name) {
+			case "id":
+				builder.setId(nextString(reader));
+				break;
+			case "route":
+				builder.setRoute(nextString(reader));
+				break;
+			case "section_requirements":
+				parseArray(reader, InputParser::parseSectionRequirement, builder::addSectionRequirements);
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return builder.build();
+	}
+
+	private static SectionRequirement parseSectionRequirement(JsonReader reader) throws IOException {
+		SectionRequirement.Builder builder = SectionRequirement.newBuilder();
+		String minStoppingTime = "";
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = nextName(reader);
+			if (skipNull(reader)) {
+				continue;
+			}
+			switch (name) {
+			case "sequence_number":
+				builder.setSequenceNumber(nextInt(reader));
+				break;
+			case "section_marker":
+				builder.setSectionMarker(nextString(reader));
+				break;
+			case "type":
+				builder.setType(nextString(reader));
+				break;
+			case "entry_earliest":
+				builder.setEntryEarliest(nextString(reader));
+				break;
+			case "entry_latest":
+				builder.setEntryLatest(nextString(reader));
+				break;
+			case "exit_earliest":
+				builder.setExitEarliest(nextString(reader));
+				break;
+			case "exit_latest":
+				builder.setExitLatest(nextString(reader));
+				break;
+			case "min_stopping_time":
+				minStoppingTime = nextString(reader);
+				break;
+			case "entry_delay_weight":
+				builder.setEntryDelayWeight(nextDouble(reader));
+				break;
+			case "exit_delay_weight":
+				builder.setExitDelayWeight(nextDouble(reader));
+				break;
+			case "connections":
+				parseArray(reader, InputParser::parseConnection, builder::addConnections);
+				break;
+			default:
+				reader.skipValue();
 			}
 		}
+		reader.endObject();
+		builder.setMinStoppingTimeSeconds(TimeUtil.parseDuration(minStoppingTime));
+		return builder.build();
 	}
 
-	private static void parseTimeStrings(Builder builder) {
-		for (ServiceIntention.Builder si : builder.getServiceIntentionsBuilderList()) {
-			for (SectionRequirement.Builder sr : si.getSectionRequirementsBuilderList()) {
-				sr.setMinStoppingTimeSeconds(TimeUtil.parseDuration(sr.getMinStoppingTime()));
-				sr.clearMinStoppingTime();
-				for(Connection.Builder c: sr.getConnectionsBuilderList()) {
-					c.setMinConnectionTimeSeconds(TimeUtil.parseDuration(c.getMinConnectionTime()));
-					c.clearMinConnectionTime();
-				}
+	private static Connection parseConnection(JsonReader reader) throws IOException {
+		Connection.Builder builder = Connection.newBuilder();
+		String minConnectionTime = "";
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = nextName(reader);
+			if (skipNull(reader)) {
+				continue;
+			}
+			switch (name) {
+			case "id":
+				builder.setId(nextString(reader));
+				break;
+			case "onto_service_intention":
+				builder.setOntoServiceIntention(nextString(reader));
+				break;
+			case "onto_section_marker":
+				builder.setOntoSectionMarker(nextString(reader));
+				break;
+			case "min_connection_time":
+				minConnectionTime = nextString(reader);
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		builder.setMinConnectionTimeSeconds(TimeUtil.parseDuration(minConnectionTime));
+		return builder.build();
+	}
+
+	private static Route parseRoute(JsonReader reader) throws IOException {
+		Route.Builder builder = Route.newBuilder();
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = nextName(reader);
+			if (skipNull(reader)) {
+				continue;
+			}
+			switch (name) {
+			case "id":
+				builder.setId(nextString(reader));
+				break;
+			case "route_paths":
+				parseArray(reader, InputParser::parseRoutePath, builder::addRoutePaths);
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return builder.build();
+	}
+
+	private static RoutePath parseRoutePath(JsonReader reader) throws IOException {
+		RoutePath.Builder builder = RoutePath.newBuilder();
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = nextName(reader);
+			if (skipNull(reader)) {
+				continue;
+			}
+			switch (name) {
+			case "id":
+				builder.setId(nextString(reader));
+				break;
+			case "route_sections":
+				parseArray(reader, InputParser::parseRouteSection, builder::addRouteSections);
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return builder.build();
+	}
+
+	private static RouteSection parseRouteSection(JsonReader reader) throws IOException {
+		RouteSection.Builder builder = RouteSection.newBuilder();
+		String minimumRunningTime = "";
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = nextName(reader);
+			if (skipNull(reader)) {
+				continue;
+			}
+			switch (name) {
+			case "sequence_number":
+				builder.setSequenceNumber(nextInt(reader));
+				break;
+			case "route_alternative_marker_at_entry":
+				builder.setRouteAlternativeMarkerAtEntry(nextString(reader));
+				break;
+			case "route_alternative_marker_at_exit":
+				builder.setRouteAlternativeMarkerAtExit(nextString(reader));
+				break;
+			case "section_marker":
+				parseArray(reader, InputParser::nextString, builder::addSectionMarker);
+				break;
+			case "resource_occupations":
+				parseArray(reader, InputParser::parseResourceOccupations, builder::addResourceOccupations);
+				break;
+			case "penalty":
+				builder.setPenalty(nextDouble(reader));
+				break;
+			case "starting_point":
+				builder.setStartingPoint(nextString(reader));
+				break;
+			case "minimum_running_time":
+				minimumRunningTime = nextString(reader);
+				break;
+			case "ending_point":
+				builder.setEndingPoint(nextString(reader));
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		builder.setMinimumRunningTimeSeconds(TimeUtil.parseDuration(minimumRunningTime));
+		return builder.build();
+	}
+
+	private static ResourceOccupations parseResourceOccupations(JsonReader reader) throws IOException {
+		ResourceOccupations.Builder builder = ResourceOccupations.newBuilder();
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = nextName(reader);
+			if (skipNull(reader)) {
+				continue;
+			}
+			switch (name) {
+			case "resource":
+				builder.setResource(nextString(reader));
+				break;
+			case "occupation_direction":
+				builder.setOccupationDirection(nextString(reader));
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return builder.build();
+	}
+
+	private static Resource parseResource(JsonReader reader) throws IOException {
+		Resource.Builder builder = Resource.newBuilder();
+		String releaseTime = "";
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = nextName(reader);
+			if (skipNull(reader)) {
+				continue;
+			}
+			switch (name) {
+			case "id":
+				builder.setId(nextString(reader));
+				break;
+			case "release_time":
+				releaseTime = nextString(reader);
+				break;
+			case "following_allowed":
+				builder.setFollowingAllowed(nextBoolean(reader));
+				break;
+			case "following_separation":
+				builder.setFollowingSeparation(nextString(reader));
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		builder.setReleaseTimeSeconds(TimeUtil.parseDuration(releaseTime));
+		return builder.build();
+	}
+
+	private static Parameters parseParameters(JsonReader reader) throws IOException {
+		Parameters.Builder builder = Parameters.newBuilder();
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = nextName(reader);
+			if (skipNull(reader)) {
+				continue;
+			}
+			switch (name) {
+			case "max_bandabweichung":
+				builder.setMaxBandabweichung(nextString(reader));
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return builder.build();
+	}
+
+	/**
+	 * Reads all elements of an array. Null elements are skipped, so {@code [null]} is read as
+	 * an empty array.
+	 */
+	private static <T> void parseArray(JsonReader reader, ElementParser<T> parser, Consumer<T> consumer)
+			throws IOException {
+		reader.beginArray();
+		while (reader.hasNext()) {
+			if (skipNull(reader)) {
+				continue;
 			}
+			consumer.accept(parser.parse(reader));
 		}
-		for (Route.Builder r : builder.getRoutesBuilderList()) {
-			for (RoutePath.Builder rp : r.getRoutePathsBuilderList()) {
-				for (RouteSection.Builder rs : rp.getRouteSectionsBuilderList()) {
-					rs.setMinimumRunningTimeSeconds(TimeUtil.parseDuration(rs.getMinimumRunningTime()));
-					rs.clearMinimumRunningTime();
+		reader.endArray();
+	}
+
+	/**
+	 * @return the next field name converted from lower camel case to the proto field name
+	 */
+	private static String nextName(JsonReader reader) throws IOException {
+		String name = reader.nextName();
+		StringBuilder sb = null;
+		for (int i = 0; i < name.length(); ++i) {
+			char c = name.charAt(i);
+			if (Character.isUpperCase(c)) {
+				if (sb == null) {
+					sb = new StringBuilder(name.length() + 4).append(name, 0, i);
 				}
+				sb.append('_').append(Character.toLowerCase(c));
+			} else if (sb != null) {
+				sb.append(c);
 			}
 		}
-		for (Resource.Builder r : builder.getResourcesBuilderList()) {
-			r.setReleaseTimeSeconds(TimeUtil.parseDuration(r.getReleaseTime()));
-			r.clearReleaseTime();
+		return (sb == null) ? name : sb.toString();
+	}
+
+	private static boolean skipNull(JsonReader reader) throws IOException {
+		if (reader.peek() != JsonToken.NULL) {
+			return false;
+		}
+		reader.nextNull();
+		return true;
+	}
+
+	/** Unwraps a single element array, which is accepted in place of a singular value. */
+	private static boolean beginSingletonArray(JsonReader reader) throws IOException {
+		if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+			return false;
+		}
+		reader.beginArray();
+		return true;
+	}
+
+	private static String nextString(JsonReader reader) throws IOException {
+		boolean array = beginSingletonArray(reader);
+		String value = (reader.peek() == JsonToken.BOOLEAN) ? String.valueOf(reader.nextBoolean())
+				: reader.nextString();
+		if (array) {
+			reader.endArray();
+		}
+		return value;
+	}
+
+	private static int nextInt(JsonReader reader) throws IOException {
+		boolean array = beginSingletonArray(reader);
+		int value = reader.nextInt();
+		if (array) {
+			reader.endArray();
+		}
+		return value;
+	}
+
+	private static double nextDouble(JsonReader reader) throws IOException {
+		boolean array = beginSingletonArray(reader);
+		double value = reader.nextDouble();
+		if (array) {
+			reader.endArray();
+		}
+		return value;
+	}
+
+	private static boolean nextBoolean(JsonReader reader) throws IOException {
+		boolean array = beginSingletonArray(reader);
+		boolean value = (reader.peek() == JsonToken.STRING) ? Boolean.parseBoolean(reader.nextString())
+				: reader.nextBoolean();
+		if (array) {
+			reader.endArray();
 		}
+		return value;
 	}
 }
@@ -1,11 +1,13 @@
 package org.povworld.sbb;
 
+import java.util.BitSet;
+
 import javax.annotation.CheckForNull;
 
 import org.povworld.collection.Set;
 import org.povworld.collection.common.Interval;
 import org.povworld.collection.common.PreConditions;
-import org.povworld.collection.mutable.HashSet;
+import org.povworld.collection.mutable.HashMap;
 import org.povworld.collection.persistent.PersistentHashSet;
 import org.povworld.collection.persistent.PersistentSet;
 import org.povworld.sbb.RouteGraph.Edge;
@@ -18,7 +20,17 @@ public abstract class IntentionRestriction {
 		this.intention = intention;
 	}
 
-	public abstract Set<Node> applyTo(GraphConstraints timeConstraints);
+	public Set<Node> applyTo(GraphConstraints timeConstraints) {
+		BitSet changedNodes = new BitSet(timeConstraints.getGraph().getNodeCount());
+		applyTo(timeConstraints, changedNodes);
+		return timeConstraints.toNodes(changedNodes);
+	}
+
+	/**
+	 * Applies the restriction and adds the ordinals of the nodes whose times changed to
+	 * {@code changedNodes}.
+	 */
+	public abstract void applyTo(GraphConstraints timeConstraints, BitSet changedNodes);
 	
 	@CheckForNull
 	public abstract Interval getRestrictionInterval();
@@ -34,13 +46,15 @@ public abstract class IntentionRestriction {
 			this.edges = edges;
 		}
 
+		/**
+		 * Restrictions are usually merged by the {@link IntentionRestrictionQueue}, so this is
+		 * only used when a restriction is applied on its own.
+		 */
 		@Override
-		public Set<Node> applyTo(GraphConstraints timeConstraints) {
-			HashSet<Node> affected = new HashSet<>();
-			for (Edge edge: edges) {
-				affected.addAll(timeConstraints.increaseEarliestEntry(edge, minTime));
-			}
-			return affected;
+		public void applyTo(GraphConstraints timeConstraints, BitSet changedNodes) {
+			TimeBoundsRestriction bounds = new TimeBoundsRestriction(intention);
+			bounds.merge(this);
+			bounds.applyTo(timeConstraints, changedNodes);
 		}
 		
 		@Override
@@ -91,12 +105,10 @@ public abstract class IntentionRestriction {
 		}
 
 		@Override
-		public Set<Node> applyTo(GraphConstraints timeConstraints) {
-			HashSet<Node> affected = new HashSet<>();
-			for (Edge edge : edges) {
-				affected.addAll(timeConstraints.decreaseLatestExit(edge, maxTime)); // TODO pass in edge set
-			}
-			return affected;
+		public void applyTo(GraphConstraints timeConstraints, BitSet changedNodes) {
+			TimeBoundsRestriction bounds = new TimeBoundsRestriction(intention);
+			bounds.merge(this);
+			bounds.applyTo(timeConstraints, changedNodes);
 		}
 		
 		@Override
@@ -135,6 +147,67 @@ public abstract class IntentionRestriction {
 		}
 	}
 
+	/**
+	 * The min and max time restrictions of one intention merged into the tightest bound per edge,
+	 * so that they are propagated in a single pass. Built by the {@link IntentionRestrictionQueue}.
+	 */
+	public static class TimeBoundsRestriction extends IntentionRestriction {
+		private final HashMap<Edge, Integer> minTimes = new HashMap<>();
+		private final HashMap<Edge, Integer> maxTimes = new HashMap<>();
+		private int mergedCount = 0;
+
+		TimeBoundsRestriction(String intention) {
+			super(intention);
+		}
+
+		void merge(IncreaseMinTimeRestriction restriction) {
+			PreConditions.conditionCheck("Intention mismatch", intention.equals(restriction.intention));
+			for (Edge edge : restriction.edges) {
+				Integer minTime = minTimes.get(edge);
+				if (minTime == null || minTime < restriction.minTime) {
+					minTimes.put(edge, restriction.minTime);
+				}
+			}
+			mergedCount++;
+		}
+
+		void merge(DecreaseMaxTimeRestriction restriction) {
+			PreConditions.conditionCheck("Intention mismatch", intention.equals(restriction.intention));
+			for (Edge edge : restriction.edges) {
+				Integer maxTime = maxTimes.get(edge);
+				if (maxTime == null || maxTime > restriction.maxTime) {
+					maxTimes.put(edge, restriction.maxTime);
+				}
+			}
+			mergedCount++;
+		}
+
+		/**
+		 * @return the number of restrictions merged into this one
+		 */
+		int getMergedCount() {
+			return mergedCount;
+		}
+
+		@Override
+		public void applyTo(GraphConstraints timeConstraints, BitSet changedNodes) {
+			timeConstraints.increaseEarliestEntries(minTimes, changedNodes);
+			timeConstraints.decreaseLatestExits(maxTimes, changedNodes);
+		}
+
+		@Override
+		@CheckForNull
+		public Interval getRestrictionInterval() {
+			// Only used while draining a queue, never as part of a conflict schedule.
+			return null;
+		}
+
+		@Override
+		public String toString() {
+			return intention + ": start>=" + minTimes + ", end<" + maxTimes;
+		}
+	}
+
 	public static class MarkPathInfeasibleRestriction extends IntentionRestriction {
 		private final PersistentSet<Edge> edges;
 
@@ -145,8 +218,8 @@ public abstract class IntentionRestriction {
 		}
 
 		@Override
-		public Set<Node> applyTo(GraphConstraints constraints) {
-			return constraints.markInfeasible(edges);
+		public void applyTo(GraphConstraints constraints, BitSet changedNodes) {
+			constraints.markInfeasible(edges, changedNodes);
 		}
 		
 		@Override
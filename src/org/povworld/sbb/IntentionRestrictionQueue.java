@@ -2,27 +2,29 @@ package org.povworld.sbb;
 
 import java.util.NoSuchElementException;
 
-import org.povworld.collection.Set;
 import org.povworld.collection.common.ObjectUtil;
 import org.povworld.collection.mutable.HashMap;
-import org.povworld.collection.mutable.HashMultiMap;
+import org.povworld.sbb.IntentionRestriction.DecreaseMaxTimeRestriction;
+import org.povworld.sbb.IntentionRestriction.IncreaseMinTimeRestriction;
 import org.povworld.sbb.IntentionRestriction.MarkPathInfeasibleRestriction;
+import org.povworld.sbb.IntentionRestriction.TimeBoundsRestriction;
 
 public class IntentionRestrictionQueue {
 	
-	// TODO collect all min/max updates per intention into a map: edge -> mintime and
-	//      apply them at once in a single call to GraphConstraint.increaseEarliestEntry
-	
-	// intention -> {IntentionRestriction}
-	private final HashMultiMap<String, IntentionRestriction> restrictions = new HashMultiMap<>();
+	// Min and max time restrictions are merged per intention, so that all pending restrictions of
+	// an intention are propagated at once.
+	private final HashMap<String, TimeBoundsRestriction> timeBounds = new HashMap<>();
 	private final HashMap<String, MarkPathInfeasibleRestriction> infeasibleEdges = new HashMap<>();
 	
 	private int poppedElements = 0;
 	
 	public boolean isEmpty() {
-		return infeasibleEdges.isEmpty() && restrictions.isEmpty();
+		return infeasibleEdges.isEmpty() && timeBounds.isEmpty();
 	}
 	
+	/**
+	 * @return the number of restrictions popped, counting each merged restriction separately
+	 */
 	public int getPoppedCount() {
 		return poppedElements;
 	}
@@ -31,9 +33,28 @@ public class IntentionRestrictionQueue {
 		MarkPathInfeasibleRestriction infeasible = ObjectUtil.castOrNull(restriction, MarkPathInfeasibleRestriction.class);
 		if (infeasible != null) {
 			addInfeasible(infeasible);
-		} else {
-			restrictions.put(restriction.intention, restriction);
+			return;
+		}
+		IncreaseMinTimeRestriction minTime = ObjectUtil.castOrNull(restriction, IncreaseMinTimeRestriction.class);
+		if (minTime != null) {
+			getTimeBounds(restriction.intention).merge(minTime);
+			return;
+		}
+		DecreaseMaxTimeRestriction maxTime = ObjectUtil.castOrNull(restriction, DecreaseMaxTimeRestriction.class);
+		if (maxTime != null) {
+			getTimeBounds(restriction.intention).merge(maxTime);
+			return;
+		}
+		throw new IllegalArgumentException("Unsupported restriction: " + restriction);
+	}
+	
+	private TimeBoundsRestriction getTimeBounds(String intention) {
+		TimeBoundsRestriction bounds = timeBounds.get(intention);
+		if (bounds == null) {
+			bounds = new TimeBoundsRestriction(intention);
+			timeBounds.put(intention, bounds);
 		}
+		return bounds;
 	}
 	
 	private void addInfeasible(MarkPathInfeasibleRestriction restriction) {
@@ -54,11 +75,9 @@ public class IntentionRestrictionQueue {
 			return infeasibleEdges.remove(intention);
 		}
 		
-		String intention = restrictions.keys().getFirst();
-		Set<IntentionRestriction> r = restrictions.get(intention);
-		IntentionRestriction result = r.getFirst();
-		restrictions.remove(intention, result);
-		poppedElements++;
+		String intention = timeBounds.keys().getFirst();
+		TimeBoundsRestriction result = timeBounds.remove(intention);
+		poppedElements += result.getMergedCount();
 		return result;
 	}
 
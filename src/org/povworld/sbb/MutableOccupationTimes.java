@@ -0,0 +1,34 @@
+package org.povworld.sbb;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * Result holder of {@link GraphConstraints#getOccupationTimes(GraphResourceOccupations.ResourceOccupation,
+ * MutableOccupationTimes)} which is reused for many occupations, so that {@link OccupationTimes} are
+ * only allocated for times which changed.
+ */
+final class MutableOccupationTimes {
+	int entryEarliest;
+	int exitEarliest;
+	int entryLatest;
+	int exitLatest;
+	double weight;
+
+	void set(int entryEarliest, int exitEarliest, int entryLatest, int exitLatest, double weight) {
+		this.entryEarliest = entryEarliest;
+		this.exitEarliest = exitEarliest;
+		this.entryLatest = entryLatest;
+		this.exitLatest = exitLatest;
+		this.weight = weight;
+	}
+
+	boolean isEqualTo(@CheckForNull OccupationTimes times) {
+		return times != null && entryEarliest == times.entryEarliest && exitEarliest == times.exitEarliest
+				&& entryLatest == times.entryLatest && exitLatest == times.exitLatest
+				&& Double.doubleToLongBits(weight) == Double.doubleToLongBits(times.weight);
+	}
+
+	OccupationTimes toOccupationTimes() {
+		return new OccupationTimes(entryEarliest, exitEarliest, entryLatest, exitLatest, weight);
+	}
+}
@@ -3,6 +3,7 @@ package org.povworld.sbb;
 import org.povworld.collection.CollectionUtil;
 import org.povworld.collection.List;
 import org.povworld.collection.Map;
+import org.povworld.collection.mutable.HashMap;
 import org.povworld.collection.mutable.HashSet;
 import org.povworld.sbb.Input.RouteSection;
 import org.povworld.sbb.Input.Scenario;
@@ -33,6 +34,29 @@ public class OutputBuilder {
 		return builder.build();
 	}
 	
+	/**
+	 * Merges the solutions of the independent sub-problems of {@code problem} into one, see
+	 * {@link Problem#splitComponents()}.
+	 */
+	public static Solution mergeSolutions(Problem problem, Iterable<Solution> components) {
+		Scenario senario = problem.getScenario();
+		Solution.Builder builder = Solution.newBuilder()
+			.setProblemInstanceLabel(senario.getLabel())
+			.setProblemInstanceHash(senario.getHash())
+			.setHash(1);
+
+		HashMap<String, TrainRun> trainRuns = new HashMap<>();
+		for (Solution component: components) {
+			for (TrainRun trainRun: component.getTrainRunsList()) {
+				trainRuns.put(trainRun.getServiceIntentionId(), trainRun);
+			}
+		}
+		for (String intention: CollectionUtil.sort(trainRuns.keys())) {
+			builder.addTrainRuns(trainRuns.get(intention));
+		}
+		return builder.build();
+	}
+
 	private static TrainRun createTrainRun(Problem problem, ServiceIntention serviceIntention, PathSchedule schedule) {
 		TrainRun.Builder builder = TrainRun.newBuilder().setServiceIntentionId(serviceIntention.getId());
 		int node = 0;
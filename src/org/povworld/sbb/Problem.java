@@ -1,10 +1,15 @@
 package org.povworld.sbb;
 
+import java.util.Arrays;
+
 import javax.annotation.Nullable;
 
 import org.povworld.collection.common.ObjectUtil;
+import org.povworld.collection.mutable.ArrayList;
 import org.povworld.collection.mutable.HashMap;
+import org.povworld.collection.mutable.HashSet;
 import org.povworld.collection.mutable.IdentityHashMap;
+import org.povworld.sbb.ConnectionRepository.Connection;
 import org.povworld.sbb.Input.Resource;
 import org.povworld.sbb.Input.Route;
 import org.povworld.sbb.Input.RoutePath;
@@ -27,8 +32,12 @@ public class Problem {
 	// Map: resource id -> Resource
 	private final HashMap<String, Resource> resources = new HashMap<>();
 	
-	// Map: intention id -> GraphResourceOccupations
-	private final HashMap<String, GraphResourceOccupations> resourceOccupations = new HashMap<>();
+	// Dense indices of the intention and resource ids, in scenario order.
+	private final SymbolTable intentionIds = new SymbolTable();
+	private final SymbolTable resourceIds = new SymbolTable();
+	
+	// Array: intention index -> GraphResourceOccupations
+	private GraphResourceOccupations[] resourceOccupations;
 	
 	public Problem(Scenario input) {
 		this.scenario = input;
@@ -40,16 +49,18 @@ public class Problem {
 	}
 
 	private void indexResourceOccupations() {
+		resourceOccupations = new GraphResourceOccupations[intentionIds.size()];
 		for(ServiceIntention si: scenario.getServiceIntentionsList()) {
 			RouteGraph graph = routeGraphs.get(si.getRoute());
-			GraphResourceOccupations occupations = GraphResourceOccupations.create(graph, si);
-			resourceOccupations.put(si.getId(), occupations);
+			int intention = intentionIds.indexOf(si.getId());
+			resourceOccupations[intention] = GraphResourceOccupations.create(graph, si, intention, resourceIds);
 		}
 	}
 
 	private void indexServiceIntentions() {
 		for(ServiceIntention si: scenario.getServiceIntentionsList()) {
 			serviceIntentions.put(si.getId(), si);
+			intentionIds.add(si.getId());
 		}
 	}
 
@@ -67,6 +78,7 @@ public class Problem {
 	private void indexResources() {
 		for(Resource r: scenario.getResourcesList()) {
 			resources.put(r.getId(), r);
+			resourceIds.add(r.getId());
 		}
 	}
 	
@@ -94,8 +106,115 @@ public class Problem {
 		return routeSectionPathId.get(section);
 	}
 	
-	public GraphResourceOccupations getResourceOccupations(String intentionId) {
-		return resourceOccupations.get(intentionId);
+	public GraphResourceOccupations getResourceOccupations(int intention) {
+		return resourceOccupations[intention];
+	}
+	
+	public int getIntentionCount() {
+		return intentionIds.size();
+	}
+	
+	public int getIntentionIndex(String intentionId) {
+		return intentionIds.indexOf(intentionId);
+	}
+	
+	public String getIntentionId(int intention) {
+		return intentionIds.get(intention);
+	}
+	
+	public int getResourceCount() {
+		return resourceIds.size();
+	}
+	
+	public int getResourceIndex(String resourceId) {
+		return resourceIds.indexOf(resourceId);
+	}
+	
+	public String getResourceId(int resource) {
+		return resourceIds.get(resource);
+	}
+	
+	/**
+	 * Splits the problem into independent sub-problems. Two intentions belong to the same
+	 * sub-problem if they occupy a common resource or are linked by a connection, directly or
+	 * through other intentions. Each sub-problem contains only the routes and resources used by
+	 * its intentions, in scenario order.
+	 */
+	public ArrayList<Problem> splitComponents() {
+		int[] parents = new int[getIntentionCount()];
+		for (int intention = 0; intention < parents.length; ++intention) {
+			parents[intention] = intention;
+		}
+		int[] resourceOwners = new int[getResourceCount()];
+		Arrays.fill(resourceOwners, -1);
+		for (int intention = 0; intention < parents.length; ++intention) {
+			for (String resource : resourceOccupations[intention].getOccupiedResources()) {
+				int index = resourceIds.indexOf(resource);
+				if (resourceOwners[index] == -1) {
+					resourceOwners[index] = intention;
+				} else {
+					union(parents, resourceOwners[index], intention);
+				}
+			}
+		}
+		for (Connection connection : ConnectionRepository.create(this).getAll()) {
+			union(parents, connection.intentionFromIndex, connection.intentionToIndex);
+		}
+		
+		int[] componentIndices = new int[parents.length];
+		ArrayList<Scenario.Builder> components = new ArrayList<>();
+		ArrayList<HashSet<String>> componentRoutes = new ArrayList<>();
+		for (int intention = 0; intention < parents.length; ++intention) {
+			int root = find(parents, intention);
+			if (root == intention) {
+				componentIndices[intention] = components.size();
+				components.push(scenario.toBuilder().clearServiceIntentions().clearRoutes().clearResources());
+				componentRoutes.push(new HashSet<>());
+			} else {
+				componentIndices[intention] = componentIndices[root];
+			}
+			ServiceIntention si = scenario.getServiceIntentions(intention);
+			components.get(componentIndices[intention]).addServiceIntentions(si);
+			componentRoutes.get(componentIndices[intention]).add(si.getRoute());
+		}
+		for (Route route : scenario.getRoutesList()) {
+			for (int component = 0; component < components.size(); ++component) {
+				if (componentRoutes.get(component).contains(route.getId())) {
+					components.get(component).addRoutes(route);
+				}
+			}
+		}
+		for (Resource resource : scenario.getResourcesList()) {
+			int owner = resourceOwners[resourceIds.indexOf(resource.getId())];
+			if (owner != -1) {
+				components.get(componentIndices[find(parents, owner)]).addResources(resource);
+			}
+		}
+		
+		ArrayList<Problem> result = new ArrayList<>(components.size());
+		for (Scenario.Builder component : components) {
+			result.push(new Problem(component.build()));
+		}
+		return result;
+	}
+	
+	private static int find(int[] parents, int element) {
+		while (parents[element] != element) {
+			parents[element] = parents[parents[element]];
+			element = parents[element];
+		}
+		return element;
+	}
+	
+	private static void union(int[] parents, int element1, int element2) {
+		int root1 = find(parents, element1);
+		int root2 = find(parents, element2);
+		// The smaller index becomes the root, so the root is the first intention of its component.
+		if (root1 < root2) {
+			parents[root2] = root1;
+		} else {
+			parents[root1] = root2;
+		}
 	}
 	
 	@Nullable
@@ -269,6 +269,8 @@ public class ResourcePlan {
     private static final double EPS = Util.WEIGHT_EPS;
     private static final int TMAX = GraphConstraints.TMAX;
     private static final Logger logger = Logger.getLogger(ResourcePlan.class.getSimpleName());
+    /** Cached in place of a maximum if the plan has no conflicts. */
+    private static final Max NO_MAX = new Max(null, 0, 0);
     
     private final String resource;
     private final int releaseSeconds;
@@ -280,10 +282,10 @@ public class ResourcePlan {
     private PersistentMap<String, IntentionInterval> mergedOccupation;
     private PersistentIntervalMap<IntentionInterval> intentOccupations;
     
-    // Reset on 'copy' and modifications:
+    // Reset on 'copy' and modifications. A single field so that concurrent readers of a shared
+    // plan either see the complete result or recalculate it.
     @CheckForNull
     private Max cachedMax = null;
-    private boolean hasCachedMax = false;
     
     public ResourcePlan(String resource, int releaseSeconds, double boost,
             HashMultiMap<String, ResourceOccupation> occupationsByIntention) {
@@ -316,7 +318,6 @@ public class ResourcePlan {
     }
     
     public void set(ResourceOccupation occupation, OccupationTimes times, IntentionRestrictionQueue queue) {
-        // TODO we could check if the old 'times' equals to the new times
         timeByOccupation = timeByOccupation.with(occupation, times);
         clearCache();
         if (updateMergedOccupation(occupation.intention)) {
@@ -324,6 +325,17 @@ public class ResourcePlan {
         }
     }
     
+    /**
+     * Same as {@link #set(ResourceOccupation, OccupationTimes, IntentionRestrictionQueue)}, but does
+     * nothing if the occupation already has these times.
+     */
+    public void set(ResourceOccupation occupation, MutableOccupationTimes times, IntentionRestrictionQueue queue) {
+        if (times.isEqualTo(timeByOccupation.get(occupation))) {
+            return;
+        }
+        set(occupation, times.toOccupationTimes(), queue);
+    }
+    
     public void remove(ResourceOccupation occupation, IntentionRestrictionQueue queue) {
         timeByOccupation = timeByOccupation.without(occupation);
         clearCache();
@@ -490,15 +502,15 @@ public class ResourcePlan {
     
     @CheckForNull
     public Max getMaxDensityRange(ConflictIntervalSelection intervalSelection) {
-        //hasCachedMax = false;
-        if (!hasCachedMax) {
-            cachedMax = calculateMax();
-            hasCachedMax = true;
+        Max max = cachedMax;
+        if (max == null) {
+            max = calculateMax();
+            cachedMax = max;
         }
-        if (cachedMax == null) {
+        if (max == NO_MAX) {
             return null;
         }
-        return selectPoint(cachedMax, intervalSelection);
+        return selectPoint(max, intervalSelection);
     }
     
     private Max selectPoint(Max max, ConflictIntervalSelection intervalSelection) {
@@ -544,16 +556,15 @@ public class ResourcePlan {
     
     private void clearCache() {
         cachedMax = null;
-        hasCachedMax = false;
     }
     
-    @CheckForNull
+    /** @return the maximum or {@link #NO_MAX} if there is no conflict */
     private Max calculateMax() {
         DensityMap densities = getDensityMap();
         
         DensityMap.Max max = densities.getMaxDensityWithInterval(2);
         if (max.interval == null) {
-            return null;
+            return NO_MAX;
         }
         
         Collection<IntentionInterval> overlappers = intentOccupations.getOverlappers(max.interval);
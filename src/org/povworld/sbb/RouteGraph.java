@@ -10,6 +10,7 @@ import org.povworld.collection.CollectionUtil;
 import org.povworld.collection.List;
 import org.povworld.collection.MultiMap;
 import org.povworld.collection.Set;
+import org.povworld.collection.common.Assert;
 import org.povworld.collection.common.TopologySorter;
 import org.povworld.collection.common.TopologySorter.Topology;
 import org.povworld.collection.immutable.ImmutableArrayList;
@@ -33,6 +34,7 @@ public class RouteGraph {
 		private final int id;
 		private final ArrayList<Edge> previous = new ArrayList<>();
 		private final ArrayList<Edge> next = new ArrayList<>();
+		private int index = -1;
 
 		public Node(int id) {
 			this.id = id;
@@ -42,6 +44,14 @@ public class RouteGraph {
 			return id;
 		}
 
+		/**
+		 * @return the dense ordinal of this node in its graph, which is its position in the
+		 *         topologically sorted nodes, or -1 if the node is not part of a graph
+		 */
+		public int getIndex() {
+			return index;
+		}
+
 		public List<Edge> getPrevious() {
 			return previous;
 		}
@@ -104,6 +114,7 @@ public class RouteGraph {
 		public final Node start;
 		public final Node end;
 		public final RouteSection section;
+		private int index = -1;
 
 		public Edge(Node start, Node end) {
 			this(start, end, null);
@@ -119,6 +130,14 @@ public class RouteGraph {
 			return section.getPenalty();
 		}
 
+		/**
+		 * @return the dense ordinal of this edge in its graph, which is its position in the
+		 *         topologically sorted edges, or -1 if the edge is not part of a graph
+		 */
+		public int getIndex() {
+			return index;
+		}
+
 		@Override
 		public String toString() {
 			return "<" + start + "," + end + ">";
@@ -130,6 +149,53 @@ public class RouteGraph {
 		}
 	}
 
+	/**
+	 * The edges of a section marker with the edges entering and leaving them, precomputed for the
+	 * connection constraints. The arrays must not be modified.
+	 */
+	public static final class MarkerEdges {
+		static final MarkerEdges NONE = new MarkerEdges(ImmutableCollections.setOf());
+
+		public final Edge[] edges;
+		// previous[i] and next[i] are the edges entering and leaving edges[i].
+		public final Edge[][] previous;
+		public final Edge[][] next;
+		// All edges entering and leaving any of the edges.
+		public final ImmutableSet<Edge> allPrevious;
+		public final ImmutableSet<Edge> allNext;
+
+		public MarkerEdges(Collection<Edge> edges) {
+			this.edges = new Edge[edges.size()];
+			this.previous = new Edge[edges.size()][];
+			this.next = new Edge[edges.size()][];
+			ImmutableHashSet.Builder<Edge> allPrevious = ImmutableHashSet.newBuilder();
+			ImmutableHashSet.Builder<Edge> allNext = ImmutableHashSet.newBuilder();
+			int i = 0;
+			for (Edge edge : edges) {
+				this.edges[i] = edge;
+				this.previous[i] = toArray(edge.start.getPrevious());
+				this.next[i] = toArray(edge.end.getNext());
+				for (Edge prev : edge.start.getPrevious()) {
+					allPrevious.add(prev);
+				}
+				for (Edge next : edge.end.getNext()) {
+					allNext.add(next);
+				}
+				i++;
+			}
+			this.allPrevious = allPrevious.build();
+			this.allNext = allNext.build();
+		}
+
+		private static Edge[] toArray(List<Edge> edges) {
+			Edge[] result = new Edge[edges.size()];
+			for (int i = 0; i < result.length; ++i) {
+				result[i] = edges.get(i);
+			}
+			return result;
+		}
+	}
+
 	private static final Logger logger = Logger.getLogger(RouteGraph.class.getSimpleName());
 
 	private final String id;
@@ -138,6 +204,7 @@ public class RouteGraph {
 	private final ImmutableList<Edge> edges;
 	private final ImmutableSet<Node> nodes;
 	private final MultiMap<String, Edge> edgesByMarker;
+	private final HashMap<String, MarkerEdges> markerEdges = new HashMap<>();
 	private final ImmutableList<Node> topologicallySortedNodes;
 	private final ImmutableList<Edge> topologicallySortedEdges;
 	private final MultiMap<Edge, String> edgeResourceOccupations;
@@ -152,6 +219,21 @@ public class RouteGraph {
 		this.topologicallySortedNodes = sortNodesTopologically(source);
 		this.topologicallySortedEdges = sortEdgesTopologically(source.getNext());
 		this.edgeResourceOccupations = createResourceOccpationMap(this);
+		assignIndices();
+		for (String marker : edgesByMarker.keys()) {
+			markerEdges.put(marker, new MarkerEdges(edgesByMarker.get(marker)));
+		}
+	}
+
+	private void assignIndices() {
+		Assert.assertEquals(topologicallySortedNodes.size(), nodes.size());
+		Assert.assertEquals(topologicallySortedEdges.size(), edges.size());
+		for (int i = 0; i < topologicallySortedNodes.size(); ++i) {
+			topologicallySortedNodes.get(i).index = i;
+		}
+		for (int i = 0; i < topologicallySortedEdges.size(); ++i) {
+			topologicallySortedEdges.get(i).index = i;
+		}
 	}
 
 	private static ImmutableSet<Node> collectNodes(ImmutableList<Edge> edges) {
@@ -226,10 +308,27 @@ public class RouteGraph {
 		return nodes.size();
 	}
 
+	public int getEdgeCount() {
+		return edges.size();
+	}
+
+	public Node getNode(int index) {
+		return topologicallySortedNodes.get(index);
+	}
+
+	public Edge getEdge(int index) {
+		return topologicallySortedEdges.get(index);
+	}
+
 	public Set<Edge> getEdgesByMarker(String marker) {
 		return edgesByMarker.get(marker);
 	}
 
+	public MarkerEdges getMarkerEdges(String marker) {
+		MarkerEdges result = markerEdges.get(marker);
+		return (result == null) ? MarkerEdges.NONE : result;
+	}
+
 	public ImmutableList<Node> getTopologicallySortedNodes() {
 		return topologicallySortedNodes;
 	}
@@ -2,30 +2,29 @@ package org.povworld.sbb;
 
 import static org.povworld.sbb.Debug.SOLVER;
 
+import java.util.BitSet;
 import java.util.Comparator;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.CheckReturnValue;
 
 import org.povworld.backtrack.Executor;
+import org.povworld.backtrack.SearchMetrics;
 import org.povworld.collection.CollectionUtil;
 import org.povworld.collection.List;
-import org.povworld.collection.Set;
 import org.povworld.collection.common.Assert;
-import org.povworld.collection.immutable.ImmutableSet;
 import org.povworld.collection.mutable.ArrayList;
 import org.povworld.collection.mutable.HashMap;
 import org.povworld.collection.mutable.HashSet;
 import org.povworld.collection.mutable.HashMultiMap;
-import org.povworld.collection.persistent.PersistentHashMap;
-import org.povworld.collection.persistent.PersistentMap;
 import org.povworld.sbb.ConnectionRepository.Connection;
 import org.povworld.sbb.GraphResourceOccupations.ResourceOccupation;
 import org.povworld.sbb.Input.Resource;
 import org.povworld.sbb.Input.ServiceIntention;
-import org.povworld.sbb.ResourcePlan.Max;
 import org.povworld.sbb.RouteGraph.Edge;
+import org.povworld.sbb.RouteGraph.MarkerEdges;
 import org.povworld.sbb.RouteGraph.Node;
 
 public class SbbExecutor implements Executor<State, Conflict, ConflictSchedule> {
@@ -36,6 +35,8 @@ public class SbbExecutor implements Executor<State, Conflict, ConflictSchedule>
 	private final double maxPenalty;
 	private final ConnectionRepository connections;
 	private final ConflictBooster conflictBooster;
+	@CheckForNull
+	private SearchMetrics metrics = null;
 
 	public SbbExecutor(Problem problem, double maxPenalty, ConnectionRepository connections, ConflictBooster conflictBooster) {
 		this.problem = problem;
@@ -44,41 +45,52 @@ public class SbbExecutor implements Executor<State, Conflict, ConflictSchedule>
 		this.conflictBooster = conflictBooster;
 	}
 	
+	/**
+	 * Records the rescoring latencies and the popped restrictions in the given metrics.
+	 */
+	public void setMetrics(@CheckForNull SearchMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
 	public State createInitialState() {
+		ChunkedArray<GraphConstraints> graphConstraints = createGraphConstraints();
 		State state = new State(
 				createResourcePlans(),
-				createGraphConstraints(),
-				0);
-		state = new StateChanger(problem, maxPenalty, connections, state).syncAllResourcePlans();
+				graphConstraints,
+				0,
+				null,
+				State.computeFingerprint(graphConstraints, 0));
+		state = new StateChanger(problem, maxPenalty, connections, conflictBooster, state).syncAllResourcePlans();
 		return state;
 	}
 		
-    private PersistentMap<String, GraphConstraints> createGraphConstraints() {
-    	PersistentMap<String, GraphConstraints> graphConstraints = PersistentHashMap.empty();
+    private ChunkedArray<GraphConstraints> createGraphConstraints() {
+    	ChunkedArray<GraphConstraints> graphConstraints = new ChunkedArray<>(problem.getIntentionCount());
 		for (ServiceIntention si : problem.getScenario().getServiceIntentionsList()) {
 			RouteGraph graph = problem.getRouteGraph(si.getRoute());
 			GraphConstraints timeConstraints = GraphConstraints.create(graph, si, maxPenalty);
-			graphConstraints = graphConstraints.with(si.getId(), timeConstraints);
+			graphConstraints.set(problem.getIntentionIndex(si.getId()), timeConstraints);
 		}
 		return graphConstraints;
 	}
 
-	private PersistentMap<String, ResourcePlan> createResourcePlans() { 
-    	PersistentMap<String, ResourcePlan> resourcePlans = PersistentHashMap.empty();		
+	private ChunkedArray<ResourcePlan> createResourcePlans() { 
+    	ChunkedArray<ResourcePlan> resourcePlans = new ChunkedArray<>(problem.getResourceCount());
 		HashMap<String, HashMultiMap<String, ResourceOccupation>> resourceOccupationsByResourceAndIntention = new HashMap<>();
 		for(Resource resource : problem.getResources()) { 
 			resourceOccupationsByResourceAndIntention.put(resource.getId(), new HashMultiMap<>());
 		}
-		for(ServiceIntention si: problem.getScenario().getServiceIntentionsList()) {
-			GraphResourceOccupations gro = problem.getResourceOccupations(si.getId());
+		for (int intention = 0; intention < problem.getIntentionCount(); ++intention) {
+			GraphResourceOccupations gro = problem.getResourceOccupations(intention);
 			for(String resource: gro.getOccupiedResources()) {
-				resourceOccupationsByResourceAndIntention.get(resource).putAll(si.getId(), gro.getOccupations(resource));
+				resourceOccupationsByResourceAndIntention.get(resource).putAll(problem.getIntentionId(intention),
+						gro.getOccupations(resource));
 			}
 		}
 		
 		for (Resource resource : problem.getResources()) {
 			double boost = 1.0;
-			resourcePlans = resourcePlans.with(resource.getId(),
+			resourcePlans.set(problem.getResourceIndex(resource.getId()),
 					new ResourcePlan(resource.getId(), resource.getReleaseTimeSeconds(), boost,
 							resourceOccupationsByResourceAndIntention.get(resource.getId())));
 		}
@@ -87,43 +99,17 @@ public class SbbExecutor implements Executor<State, Conflict, ConflictSchedule>
 
 	@Override
 	public Conflict getWorstConflict(State state) {
-		Conflict result = null;
-		for (ResourcePlan resourcePlan : state.resourcePlans.values()) {
-			Conflict conflict = getConflict(resourcePlan); 		
-			if (conflict != null && (result == null || conflict.badness > result.badness)) {
-				result = conflict;
-			}
-		}
-		for(Connection connection: connections.getAll()) {
-			// TODO store ConnectionOccupations in ConnectionRepository
-			//System.out.println(connection + " -> " + occupation + " " + occupation.getBadness());
-			Conflict conflict = getConflict(state, connection);
-			if (conflict != null && (result == null || conflict.badness > result.badness)) {
-				result = conflict;
-			}
+		ConflictIndex index = state.getLatestConflictIndex();
+		if (index.getBoostGeneration() != conflictBooster.getGeneration()) {
+			// Boosts changed since this state was created. Keep the result for the changers created
+			// from this state.
+			index = index.reboost(state.resourcePlans, conflictBooster);
+			state.setReboostedConflictIndex(index);
 		}
+		Conflict result = index.getWorst();
+		assertWorstConflictIsConsistent(state, result);
 		return result;
 	}
-	
-	@CheckForNull
-	private Conflict getConflict(ResourcePlan resourcePlan) {
-		Max maxDensityRange = resourcePlan.getMaxDensityRange(Debug.CONFLICT_SCHEDULE);
-		if (maxDensityRange == null) {
-			return null;
-		}
-		double maxDensity = maxDensityRange.density * conflictBooster.getBoost(resourcePlan.getResource());
-		Assert.assertTrue(maxDensity > 0, "zero density");
-		return new Conflict(maxDensity, resourcePlan.getResource(), maxDensityRange.interval);
-	}
-
-	@CheckForNull
-	private Conflict getConflict(State state, Connection connection) {
-		ConnectionOccupation occupation = ConnectionOccupation.create(connection, state.graphConstraints);
-		if (occupation.getBadness() <= 0) {
-			return null;
-		}
-		return new Conflict(occupation.getBadness(), occupation);
-	}
 
 	@Override
 	public List<ConflictSchedule> getOptions(State state, Conflict conflict) {
@@ -131,7 +117,7 @@ public class SbbExecutor implements Executor<State, Conflict, ConflictSchedule>
 		
 		List<ConflictSchedule> conflictSchedules;
 		if (conflict.resource != null) {
-			ResourcePlan plan = state.resourcePlans.get(conflict.getResource());
+			ResourcePlan plan = state.resourcePlans.get(problem.getResourceIndex(conflict.getResource()));
 			conflictSchedules = 
 					plan.createConflictSchedules(conflict.range);
 		} else {
@@ -139,7 +125,11 @@ public class SbbExecutor implements Executor<State, Conflict, ConflictSchedule>
 		}
 		
 		if (maxPenalty > 0) {
+			long start = System.nanoTime();
 			conflictSchedules = rescore(state, conflictSchedules);
+			if (metrics != null) {
+				metrics.recordRescore(System.nanoTime() - start);
+			}
 		}
 		
 		conflictSchedules = CollectionUtil.sort(conflictSchedules, new Comparator<ConflictSchedule>() {
@@ -155,107 +145,164 @@ public class SbbExecutor implements Executor<State, Conflict, ConflictSchedule>
 	}
 
 	private List<ConflictSchedule> rescore(State state, List<ConflictSchedule> conflictSchedules) {
-		HashSet<String> intentions = new HashSet<>();
+		BitSet intentions = new BitSet();
 		for (ConflictSchedule schedule : conflictSchedules) {
 			for (IntentionRestriction r : schedule.restrictions) {
-				intentions.add(r.intention);
+				intentions.set(problem.getIntentionIndex(r.intention));
 			}
 		}
 		
-		ArrayList<ConflictSchedule> result = new ArrayList<>(conflictSchedules.size());
+		ConflictSchedule[] schedules = new ConflictSchedule[conflictSchedules.size()];
+		for (int i = 0; i < schedules.length; ++i) {
+			schedules[i] = conflictSchedules.get(i);
+		}
 		
-		for(ConflictSchedule schedule: conflictSchedules) {
-			HashMap<String, GraphConstraints> constraints = new HashMap<>();
-			HashMap<String, ResourcePlan> modifiedPlans = new HashMap<>();
-			
-			for(IntentionRestriction restriction: schedule.restrictions) {
-				String intention = restriction.intention;
-				GraphConstraints constraint = state.graphConstraints.get(intention).copy();
-				constraints.put(intention, constraint);
+		// The trials only read the state, so they can run concurrently. Within a worker of the
+		// PARALLEL director the stream runs in the director's pool, otherwise in the common pool.
+		double[] minPenalties = new double[schedules.length];
+		IntStream trials = IntStream.range(0, schedules.length);
+		if (Debug.PARALLEL_RESCORE) {
+			trials = trials.parallel();
+		}
+		trials.forEach(i -> minPenalties[i] = getMinPenaltyAfter(state, schedules[i], intentions));
+		
+		ArrayList<ConflictSchedule> result = new ArrayList<>(schedules.length);
+		for (int i = 0; i < schedules.length; ++i) {
+			// TODO filter Infinity badness
+			result.push(schedules[i].withBadness(minPenalties[i]));
+		}
+		return result;
+	}
+
+	/**
+	 * Propagates the given schedule on copies of the affected plans and constraints of the state.
+	 * 
+	 * @return the sum of the minimum penalties of the given intentions afterwards
+	 */
+	private double getMinPenaltyAfter(State state, ConflictSchedule schedule, BitSet intentions) {
+		HashMap<Integer, GraphConstraints> constraints = new HashMap<>();
+		HashMap<Integer, ResourcePlan> modifiedPlans = new HashMap<>();
+		
+		for(IntentionRestriction restriction: schedule.restrictions) {
+			int intention = problem.getIntentionIndex(restriction.intention);
+			GraphConstraints constraint = state.graphConstraints.get(intention).copy();
+			constraints.put(intention, constraint);
+		}
+		
+		IntentionRestrictionQueue queue = new IntentionRestrictionQueue();
+		queue.addAll(schedule.restrictions);
+		BitSet changedNodes = new BitSet();
+		MutableOccupationTimes occupationTimes = new MutableOccupationTimes();
+		
+		while(!queue.isEmpty()) {
+			final IntentionRestriction restriction = queue.pop();
+			final int intention = problem.getIntentionIndex(restriction.intention);
+			final GraphConstraints constraint = constraints.get(intention);
+			if (constraint == null) {
+				continue;
 			}
 			
-			IntentionRestrictionQueue queue = new IntentionRestrictionQueue();
-			queue.addAll(schedule.restrictions);
-			
-			while(!queue.isEmpty()) {
-				final IntentionRestriction restriction = queue.pop();
-				final GraphConstraints constraint = constraints.get(restriction.intention);
-				if (constraint == null) {
+			changedNodes.clear();
+			restriction.applyTo(constraint, changedNodes);
+
+			HashSet<ResourceOccupation> needsUpdate = new HashSet<>();
+			GraphResourceOccupations graphResourceOccupations = problem.getResourceOccupations(intention);
+			RouteGraph graph = constraint.getGraph();
+			for (int n = changedNodes.nextSetBit(0); n >= 0; n = changedNodes.nextSetBit(n + 1)) {
+				Node node = graph.getNode(n);
+				needsUpdate.addAll(graphResourceOccupations.getOccupationsStartingAt(node));
+				needsUpdate.addAll(graphResourceOccupations.getOccupationsEndingAt(node));
+			}
+		
+			for(ResourceOccupation ro: needsUpdate) {
+				final GraphConstraints roConstraint = constraints.get(ro.intentionIndex);
+				if (roConstraint == null) {
 					continue;
 				}
-				
-				Set<Node> changedNodes = restriction.applyTo(constraint);
-
-				HashSet<ResourceOccupation> needsUpdate = new HashSet<>();
-				GraphResourceOccupations graphResourceOccupations = problem.getResourceOccupations(restriction.intention);
-				for (Node node : changedNodes) {
-					needsUpdate.addAll(graphResourceOccupations.getOccupationsStartingAt(node));
-					needsUpdate.addAll(graphResourceOccupations.getOccupationsEndingAt(node));
+				ResourcePlan plan = modifiedPlans.get(ro.resourceIndex);
+				if (plan == null) {
+					plan = state.resourcePlans.get(ro.resourceIndex).copy();
+					modifiedPlans.put(ro.resourceIndex, plan);
 				}
-			
-				for(ResourceOccupation ro: needsUpdate) {
-					final GraphConstraints roConstraint = constraints.get(ro.intention);
-					if (roConstraint == null) {
-						continue;
-					}
-					ResourcePlan plan = modifiedPlans.get(ro.resource);
-					if (plan == null) {
-						plan = state.resourcePlans.get(ro.resource).copy();
-						modifiedPlans.put(ro.resource, plan);
-					}
-					OccupationTimes times = roConstraint.getOccupationTimes(ro.getStart(), ro.getEnd(), ro.flow);
-					if (times == null) {
-						plan.remove(ro, queue);
-					} else {
-						plan.set(ro, times, queue);
-					}
+				if (roConstraint.getOccupationTimes(ro, occupationTimes)) {
+					plan.set(ro, occupationTimes, queue);
+				} else {
+					plan.remove(ro, queue);
 				}
 			}
-			
-			double minPenalty = 0;
-			for(String intention: intentions) {
-				GraphConstraints gc = constraints.get(intention);
-				if (gc == null) {
-					gc = state.graphConstraints.get(intention);
-				}
-				minPenalty += gc.getMinPenalty();
-			}
-
-			// TODO filter Infinity badness
-			result.push(schedule.withBadness(minPenalty));
 		}
 		
-		return result;
+		double minPenalty = 0;
+		for (int intention = intentions.nextSetBit(0); intention >= 0;
+				intention = intentions.nextSetBit(intention + 1)) {
+			GraphConstraints gc = constraints.get(intention);
+			if (gc == null) {
+				gc = state.graphConstraints.get(intention);
+			}
+			minPenalty += gc.getMinPenalty();
+		}
+		return minPenalty;
 	}
 
 	@Override
 	@CheckForNull
 	public State apply(State state, ConflictSchedule conflictSchedule) {
-		return new StateChanger(problem, maxPenalty, connections, state).apply(conflictSchedule);
+		StateChanger changer = new StateChanger(problem, maxPenalty, connections, conflictBooster, state);
+		State result = changer.apply(conflictSchedule);
+		if (metrics != null) {
+			metrics.addRestrictionsPopped(changer.getPoppedRestrictionCount());
+		}
+		return result;
+	}
+
+	@Override
+	public long getFingerprint(State state) {
+		return state.fingerprint;
 	}
 	
 	// TODO move to separate file
 	public static class StateChanger {
-		private final HashSet<String> copiedResourcePlans = new HashSet<>();
-		private final HashSet<String> copiedGraphConstraints = new HashSet<>();
+		private final BitSet copiedResourcePlans = new BitSet();
+		private final BitSet copiedGraphConstraints = new BitSet();
 		private final IntentionRestrictionQueue restrictionQueue = new IntentionRestrictionQueue();
 		
 		private final Problem problem;
 		private final double maxPenalty;
 		private final ConnectionRepository connections; 
+		private final ConflictBooster conflictBooster;
 		
-		private PersistentMap<String, ResourcePlan> resourcePlans;
-		private PersistentMap<String, GraphConstraints> graphConstraints;
+		private final ChunkedArray<ResourcePlan> resourcePlans;
+		private final ChunkedArray<GraphConstraints> graphConstraints;
 		private double minPenalty;
+		@CheckForNull
+		private final ConflictIndex conflictIndex;
+		// Fingerprint of the state without the parts of the copied graph constraints and the min penalty.
+		private long fingerprint;
+		// Intentions whose graph constraints changed since the connection constraints were applied.
+		private final BitSet changedIntentions = new BitSet();
+		// Intentions whose graph constraints changed since the state this changer started from.
+		private final BitSet modifiedIntentions = new BitSet();
+		// Ordinals of the nodes changed by the last restriction, reused to not allocate.
+		private final BitSet changedNodes = new BitSet();
+		// Times of the occupation updated last, reused to not allocate.
+		private final MutableOccupationTimes occupationTimes = new MutableOccupationTimes();
 		
 
-		public StateChanger(Problem problem, double maxPenalty, ConnectionRepository connections, State state) {
+		public StateChanger(Problem problem, double maxPenalty, ConnectionRepository connections,
+				ConflictBooster conflictBooster, State state) {
 			this.problem = problem;
 			this.maxPenalty = maxPenalty;
 			this.connections = connections;
-			this.resourcePlans = state.resourcePlans;
-			this.graphConstraints = state.graphConstraints;
+			this.conflictBooster = conflictBooster;
+			this.resourcePlans = state.resourcePlans.copy();
+			this.graphConstraints = state.graphConstraints.copy();
 			this.minPenalty = state.minPenalty;
+			this.conflictIndex = state.getLatestConflictIndex();
+			this.fingerprint = state.fingerprint ^ State.fingerprint(state.minPenalty);
+			if (conflictIndex == null) {
+				// Initial state, the connection constraints have never been applied.
+				changedIntentions.set(0, graphConstraints.size());
+			}
 		}
 
 		@CheckForNull
@@ -264,11 +311,16 @@ public class SbbExecutor implements Executor<State, Conflict, ConflictSchedule>
 			return drainQueue();
 		}
 		
+		public int getPoppedRestrictionCount() {
+			return restrictionQueue.getPoppedCount();
+		}
+		
 		@CheckForNull
 		public State syncAllResourcePlans() {
 			for(ServiceIntention intention: problem.getScenario().getServiceIntentionsList()) {
-				ImmutableSet<Node> nodes = problem.getRouteGraph(intention.getRoute()).getNodes();
-				syncResourcePlan(intention.getId(), nodes, restrictionQueue);
+				changedNodes.clear();
+				changedNodes.set(0, problem.getRouteGraph(intention.getRoute()).getNodeCount());
+				syncResourcePlan(problem.getIntentionIndex(intention.getId()), changedNodes, restrictionQueue);
 			}
 			return drainQueue();
 		}
@@ -282,18 +334,24 @@ public class SbbExecutor implements Executor<State, Conflict, ConflictSchedule>
 				//logger.log(SOLVER, "Applying " + restriction + " on " + restriction.resource);
 				
 				// Apply restriction to all affected occupations.
-				final String intention = restriction.intention;
+				final int intention = problem.getIntentionIndex(restriction.intention);
 				final GraphConstraints constraints = prepareGraphConstraintsForModification(intention);
 				
 				double penaltyBefore = constraints.getMinPenalty();
 			
-				Set<Node> changedNodes = restriction.applyTo(constraints);
+				changedNodes.clear();
+				restriction.applyTo(constraints, changedNodes);
 				if (!constraints.areFeasible()) {
 					return null;
 				}
+				if (!changedNodes.isEmpty()) {
+					setChanged(intention);
+				}
 				
 				GraphResourceOccupations graphResourceOccupations = problem.getResourceOccupations(intention);
-				for (Node node : changedNodes) {
+				RouteGraph graph = constraints.getGraph();
+				for (int n = changedNodes.nextSetBit(0); n >= 0; n = changedNodes.nextSetBit(n + 1)) {
+					Node node = graph.getNode(n);
 					needsUpdate.addAll(graphResourceOccupations.getOccupationsStartingAt(node));
 					needsUpdate.addAll(graphResourceOccupations.getOccupationsEndingAt(node));
 				}
@@ -305,7 +363,7 @@ public class SbbExecutor implements Executor<State, Conflict, ConflictSchedule>
 				
 				if (restrictionQueue.isEmpty()) {
 					for (ResourceOccupation ro : needsUpdate) {
-						updateResourcePlan(ro.resource, ro, restrictionQueue);
+						updateResourcePlan(ro, restrictionQueue);
 					}
 					needsUpdate.clear();
 					if (penaltyIncrease > 0 && !increaseMinPenalty(penaltyIncrease, restrictionQueue)) {
@@ -316,75 +374,122 @@ public class SbbExecutor implements Executor<State, Conflict, ConflictSchedule>
 				}
 			}
 			logger.log(SOLVER, "Applied {0} path restrictions.", restrictionQueue.getPoppedCount());
-			return new State(resourcePlans, graphConstraints, minPenalty);
+			return new State(resourcePlans, graphConstraints, minPenalty, updateConflictIndex(), updateFingerprint());
+		}
+		
+		private long updateFingerprint() {
+			long result = fingerprint ^ State.fingerprint(minPenalty);
+			for (int intention = copiedGraphConstraints.nextSetBit(0); intention >= 0;
+					intention = copiedGraphConstraints.nextSetBit(intention + 1)) {
+				result ^= State.fingerprint(intention, graphConstraints.get(intention));
+			}
+			return result;
+		}
+		
+		private ConflictIndex updateConflictIndex() {
+			if (conflictIndex == null) {
+				return ConflictIndex.create(resourcePlans, graphConstraints, connections, conflictBooster);
+			}
+			// Only modified resource plans and graph constraints have been copied.
+			return conflictIndex.update(resourcePlans, graphConstraints, copiedResourcePlans, getModifiedIntentions(),
+					conflictBooster);
+		}
+		
+		/**
+		 * @return the intentions whose graph constraints changed since the original state, copies which
+		 *         ended up unchanged are skipped
+		 */
+		private BitSet getModifiedIntentions() {
+			return modifiedIntentions;
+		}
+		
+		private void setChanged(int intention) {
+			changedIntentions.set(intention);
+			modifiedIntentions.set(intention);
 		}
 		
 		private void applyConnectionConstraints(IntentionRestrictionQueue restrictionQueue) {
-			for (Connection c : connections.getAll()) {
-				GraphConstraints timeConstraintsFrom = graphConstraints.get(c.intentionFrom);
-				int earliestArrival = Integer.MAX_VALUE;
-				for (Edge edge : timeConstraintsFrom.getGraph().getEdgesByMarker(c.markerFrom)) {
-					if (!timeConstraintsFrom.isFeasible(edge)) {
-						continue;
-					}
-					int time = timeConstraintsFrom.getEntryEarliest(edge);
-					earliestArrival = Math.min(earliestArrival, time);
+			// All other connections still hold, the previous state was propagated completely.
+			List<Connection> changedConnections = connections.getConnections(changedIntentions);
+			changedIntentions.clear();
+			for (Connection c : changedConnections) {
+				applyConnectionConstraint(c, restrictionQueue);
+			}
+		}
+		
+		private void applyConnectionConstraint(Connection c, IntentionRestrictionQueue restrictionQueue) {
+			GraphConstraints timeConstraintsFrom = graphConstraints.get(c.intentionFromIndex);
+			MarkerEdges arrivalEdges = timeConstraintsFrom.getGraph().getMarkerEdges(c.markerFrom);
+			int earliestArrival = Integer.MAX_VALUE;
+			for (Edge edge : arrivalEdges.edges) {
+				if (!timeConstraintsFrom.isFeasible(edge)) {
+					continue;
 				}
-				
-				GraphConstraints timeConstraintsTo = graphConstraints.get(c.intentionTo);
-				int latestDeparture = 0;
-				for (Edge edge: timeConstraintsTo.getGraph().getEdgesByMarker(c.markerTo)) {
-					if (!timeConstraintsTo.isFeasible(edge)) {
-						continue;
-					}
-					int time = timeConstraintsTo.getExitLatest(edge);
-					latestDeparture = Math.max(latestDeparture, time);
+				int time = timeConstraintsFrom.getEntryEarliest(edge);
+				earliestArrival = Math.min(earliestArrival, time);
+			}
+			
+			GraphConstraints timeConstraintsTo = graphConstraints.get(c.intentionToIndex);
+			MarkerEdges departureEdges = timeConstraintsTo.getGraph().getMarkerEdges(c.markerTo);
+			int latestDeparture = 0;
+			for (Edge edge: departureEdges.edges) {
+				if (!timeConstraintsTo.isFeasible(edge)) {
+					continue;
 				}
+				int time = timeConstraintsTo.getExitLatest(edge);
+				latestDeparture = Math.max(latestDeparture, time);
+			}
 
-				int latestArrival = latestDeparture - c.minConnectionTime;
-				int earliestDeparture = earliestArrival + c.minConnectionTime;
+			int latestArrival = latestDeparture - c.minConnectionTime;
+			int earliestDeparture = earliestArrival + c.minConnectionTime;
+			
+			// The sets are only allocated if the connection actually restricts the intention.
+			HashSet<Edge> affectedEdgesFrom = null;
+			for (int i = 0; i < arrivalEdges.edges.length; ++i) {
+				if (!timeConstraintsFrom.isFeasible(arrivalEdges.edges[i])) {
+					continue;
+				}
 				
-				HashSet<Edge> affectedEdgesFrom = new HashSet<>();
-				for (Edge arrivalEdge : timeConstraintsFrom.getGraph().getEdgesByMarker(c.markerFrom)) {
-					if (!timeConstraintsFrom.isFeasible(arrivalEdge)) {
+				for(Edge prev: arrivalEdges.previous[i]) {
+					if (!timeConstraintsFrom.isFeasible(prev)) {
 						continue;
 					}
-					
-					for(Edge prev: arrivalEdge.start.getPrevious()) {
-						if (!timeConstraintsFrom.isFeasible(prev)) {
-							continue;
-						}
-						if (timeConstraintsFrom.getExitLatest(prev) > latestArrival) {
-							affectedEdgesFrom.add(prev);
+					if (timeConstraintsFrom.getExitLatest(prev) > latestArrival) {
+						if (affectedEdgesFrom == null) {
+							affectedEdgesFrom = new HashSet<>();
 						}
+						affectedEdgesFrom.add(prev);
 					}
 				}
-				if (!affectedEdgesFrom.isEmpty()) {
-					restrictionQueue.add(
-							new IntentionRestriction.DecreaseMaxTimeRestriction(
-									c.intentionFrom, latestArrival, affectedEdgesFrom));
+			}
+			if (affectedEdgesFrom != null) {
+				restrictionQueue.add(
+						new IntentionRestriction.DecreaseMaxTimeRestriction(
+								c.intentionFrom, latestArrival, affectedEdgesFrom));
+			}
+			
+			HashSet<Edge> affectedEdgesTo = null;
+			for (int i = 0; i < departureEdges.edges.length; ++i) {
+				if (!timeConstraintsTo.isFeasible(departureEdges.edges[i])) {
+					continue;
 				}
 				
-				HashSet<Edge> affectedEdgesTo = new HashSet<>();
-				for (Edge departureEdge: timeConstraintsTo.getGraph().getEdgesByMarker(c.markerTo)) {
-					if (!timeConstraintsTo.isFeasible(departureEdge)) {
+				for(Edge next: departureEdges.next[i]) {
+					if (!timeConstraintsTo.isFeasible(next)) {
 						continue;
 					}
-					
-					for(Edge next: departureEdge.end.getNext()) {
-						if (!timeConstraintsTo.isFeasible(next)) {
-							continue;
-						}
-						if (timeConstraintsTo.getEntryEarliest(next) < earliestDeparture) {
-							affectedEdgesTo.add(next);
+					if (timeConstraintsTo.getEntryEarliest(next) < earliestDeparture) {
+						if (affectedEdgesTo == null) {
+							affectedEdgesTo = new HashSet<>();
 						}
+						affectedEdgesTo.add(next);
 					}
 				}
-				if (!affectedEdgesTo.isEmpty()) {
-					restrictionQueue.add(
-							new IntentionRestriction.IncreaseMinTimeRestriction(
-									c.intentionTo, earliestDeparture, affectedEdgesTo));
-				}
+			}
+			if (affectedEdgesTo != null) {
+				restrictionQueue.add(
+						new IntentionRestriction.IncreaseMinTimeRestriction(
+								c.intentionTo, earliestDeparture, affectedEdgesTo));
 			}
 		}
 		
@@ -395,16 +500,20 @@ public class SbbExecutor implements Executor<State, Conflict, ConflictSchedule>
 				return false;
 			}
 			
-			for(String intention: graphConstraints.keys()) {
+			for (int intention = 0; intention < graphConstraints.size(); ++intention) {
 				GraphConstraints constraints = prepareGraphConstraintsForModification(intention);
 				double minPenaltyBefore = constraints.getMinPenalty();
 				double maxPenalty =
 						Math.min(Debug.MAX_PENALTY_PER_INTENTION, 
 								 constraints.getMinPenalty() + remainingPenalty);
-				Set<Node> changedNodes = constraints.setMaxPenalty(maxPenalty);
+				changedNodes.clear();
+				constraints.setMaxPenalty(maxPenalty, changedNodes);
 				if (!constraints.areFeasible()) {
 					return false;
 				}
+				if (!changedNodes.isEmpty()) {
+					setChanged(intention);
+				}
 				syncResourcePlan(intention, changedNodes, restrictionQueue);
 				double minPenaltyAfter = constraints.getMinPenalty();
 				if (minPenaltyAfter > minPenaltyBefore) {
@@ -416,50 +525,52 @@ public class SbbExecutor implements Executor<State, Conflict, ConflictSchedule>
 		}
 
 		// TODO separate into min-time and max-time changes?
-		private void syncResourcePlan(String intention, Set<Node> changedNodes,
+		private void syncResourcePlan(int intention, BitSet changedNodes,
 				IntentionRestrictionQueue restrictionQueue) {
 			HashSet<ResourceOccupation> needsUpdate = new HashSet<>();
 			GraphResourceOccupations graphResourceOccupations = problem.getResourceOccupations(intention);
-			for (Node node : changedNodes) {
+			RouteGraph graph = graphConstraints.get(intention).getGraph();
+			for (int n = changedNodes.nextSetBit(0); n >= 0; n = changedNodes.nextSetBit(n + 1)) {
+				Node node = graph.getNode(n);
 				needsUpdate.addAll(graphResourceOccupations.getOccupationsStartingAt(node));
 				needsUpdate.addAll(graphResourceOccupations.getOccupationsEndingAt(node));
 			}
 			for (ResourceOccupation ro : needsUpdate) {
-				updateResourcePlan(ro.resource, ro, restrictionQueue);
+				updateResourcePlan(ro, restrictionQueue);
 			}
 		}
 
-		private void updateResourcePlan(String resource,
-				ResourceOccupation occupation,
+		private void updateResourcePlan(ResourceOccupation occupation,
 				IntentionRestrictionQueue restrictionQueue) {
-			ResourcePlan resourcePlan = prepareResourcePlanForModification(resource);
-			GraphConstraints timeConstraints = graphConstraints.get(occupation.intention);
-			OccupationTimes times = timeConstraints.getOccupationTimes(
-					occupation.getStart(), occupation.getEnd(), occupation.flow);
-			if (times == null) {
+			ResourcePlan resourcePlan = prepareResourcePlanForModification(occupation.resourceIndex);
+			GraphConstraints timeConstraints = graphConstraints.get(occupation.intentionIndex);
+			if (!timeConstraints.getOccupationTimes(occupation, occupationTimes)) {
 				resourcePlan.remove(occupation, restrictionQueue);
 				return;
 			}
-			resourcePlan.set(occupation, times, restrictionQueue);
+			resourcePlan.set(occupation, occupationTimes, restrictionQueue);
 		}
 		
 		@CheckReturnValue
-		private ResourcePlan prepareResourcePlanForModification(String resource) {
-			if (!copiedResourcePlans.add(resource)) {
+		private ResourcePlan prepareResourcePlanForModification(int resource) {
+			if (copiedResourcePlans.get(resource)) {
 				return resourcePlans.get(resource);
 			}
+			copiedResourcePlans.set(resource);
 			ResourcePlan copy = resourcePlans.get(resource).copy();
-			resourcePlans = resourcePlans.with(resource, copy);
+			resourcePlans.set(resource, copy);
 			return copy;
 		}
 		
 		@CheckReturnValue
-		private GraphConstraints prepareGraphConstraintsForModification(String intention) {
-			if (!copiedGraphConstraints.add(intention)) {
+		private GraphConstraints prepareGraphConstraintsForModification(int intention) {
+			if (copiedGraphConstraints.get(intention)) {
 				return graphConstraints.get(intention);
 			}
+			copiedGraphConstraints.set(intention);
+			fingerprint ^= State.fingerprint(intention, graphConstraints.get(intention));
 			GraphConstraints copy = graphConstraints.get(intention).copy();
-			graphConstraints = graphConstraints.with(intention, copy);
+			graphConstraints.set(intention, copy);
 			return copy;
 		}
 		
@@ -468,26 +579,26 @@ public class SbbExecutor implements Executor<State, Conflict, ConflictSchedule>
 	// Debugging methods
 	
 	private static void assertResourcePlanAndTimeConstrainsAreConsistent(Problem problem,
-			PersistentMap<String, ResourcePlan> resourcePlans,
-			PersistentMap<String, GraphConstraints> graphConstraints) {
+			ChunkedArray<ResourcePlan> resourcePlans,
+			ChunkedArray<GraphConstraints> graphConstraints) {
 		if (!Debug.ENABLE_RESOURCE_PLAN_CONSITENCY_CHECKS) {
 			return;
 		}
-		for (String intention : graphConstraints.keys()) {
+		for (int intention = 0; intention < graphConstraints.size(); ++intention) {
 			assertResourcePlanAndTimeConstraintsAreConsistent(problem, resourcePlans, graphConstraints, intention);
 		}
 	}
 
 	private static void assertResourcePlanAndTimeConstraintsAreConsistent(Problem problem,
-			PersistentMap<String, ResourcePlan> resourcePlans, PersistentMap<String, GraphConstraints> graphConstraints,
-			String intention) {
+			ChunkedArray<ResourcePlan> resourcePlans, ChunkedArray<GraphConstraints> graphConstraints,
+			int intention) {
 		if (!Debug.ENABLE_RESOURCE_PLAN_CONSITENCY_CHECKS) {
 			return;
 		}
 		GraphConstraints timeConstraints = graphConstraints.get(intention);
 		GraphResourceOccupations occupations = problem.getResourceOccupations(intention);
 		for (String resource : occupations.getOccupiedResources()) {
-			ResourcePlan resourcePlan = resourcePlans.get(resource);
+			ResourcePlan resourcePlan = resourcePlans.get(problem.getResourceIndex(resource));
 			for (ResourceOccupation o : occupations.getOccupations(resource)) {
 				OccupationTimes times = timeConstraints.getOccupationTimes(o.getStart(), o.getEnd(), o.flow);
 				resourcePlan.check(o, times);
@@ -495,6 +606,31 @@ public class SbbExecutor implements Executor<State, Conflict, ConflictSchedule>
 		}
 	}
 
+	private void assertWorstConflictIsConsistent(State state, @CheckForNull Conflict worst) {
+		if (!Debug.ENABLE_CONFLICT_INDEX_CONSISTENCY_CHECKS) {
+			return;
+		}
+		Conflict expected = null;
+		for (int resource = 0; resource < state.resourcePlans.size(); ++resource) {
+			Conflict conflict = ConflictIndex.getConflict(state.resourcePlans.get(resource), conflictBooster);
+			if (conflict != null && (expected == null || conflict.badness > expected.badness)) {
+				expected = conflict;
+			}
+		}
+		for (Connection connection : connections.getAll()) {
+			Conflict conflict = ConflictIndex.getConflict(connection, state.graphConstraints);
+			if (conflict != null && (expected == null || conflict.badness > expected.badness)) {
+				expected = conflict;
+			}
+		}
+		if (expected == null) {
+			Assert.assertTrue(worst == null, "expected no conflict but got %s", worst);
+		} else {
+			Assert.assertTrue(worst != null && worst.badness == expected.badness, "expected %s but got %s",
+					expected, worst);
+		}
+	}
+
 	private void printConflictSchedule(Conflict conflict, List<ConflictSchedule> conflictSchedules) {
 		logger.log(SOLVER, "Schedules for worst conflict " + conflict + ":");
 		for (ConflictSchedule cs : conflictSchedules) {
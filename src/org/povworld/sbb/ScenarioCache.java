@@ -0,0 +1,88 @@
+package org.povworld.sbb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.povworld.sbb.Input.Scenario;
+
+import com.google.common.hash.Hashing;
+import com.google.protobuf.CodedInputStream;
+
+/**
+ * Caches parsed scenarios in protobuf binary format.
+ * <p>
+ * The cache files are keyed by the hash of the input file's content, so a changed input is
+ * parsed again. The cached scenario includes the parsed {@code *_seconds} fields, hence
+ * {@link #FORMAT_VERSION} must be increased whenever {@link InputParser} changes what it puts
+ * into the scenario.
+ */
+public class ScenarioCache {
+
+	private static final Logger logger = Logger.getLogger(ScenarioCache.class.getSimpleName());
+
+	private static final int FORMAT_VERSION = 1;
+
+	private final File directory;
+
+	public ScenarioCache(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Loads the scenario of the given input file from the cache. If it is not cached yet, the
+	 * input file is parsed and the result is added to the cache.
+	 */
+	public Scenario load(File inputFile) throws IOException {
+		File cacheFile = getCacheFile(inputFile);
+		if (cacheFile.isFile()) {
+			try {
+				Scenario scenario = read(cacheFile);
+				logger.log(Level.INFO, "Loaded scenario from cache file " + cacheFile);
+				return scenario;
+			} catch (IOException e) {
+				logger.log(Level.WARNING, "Failed to read cache file " + cacheFile + ", parsing input again", e);
+			}
+		}
+		Scenario scenario = InputParser.parseScenario(inputFile);
+		write(scenario, cacheFile);
+		logger.log(Level.INFO, "Wrote scenario to cache file " + cacheFile);
+		return scenario;
+	}
+
+	File getCacheFile(File inputFile) throws IOException {
+		String hash = com.google.common.io.Files.asByteSource(inputFile).hash(Hashing.sha256()).toString();
+		return new File(directory, hash + ".v" + FORMAT_VERSION + ".pb");
+	}
+
+	private static Scenario read(File cacheFile) throws IOException {
+		try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return Scenario.parseFrom(CodedInputStream.newInstance(buffer));
+		}
+	}
+
+	private void write(Scenario scenario, File cacheFile) throws IOException {
+		Files.createDirectories(directory.toPath());
+		// Write to a temporary file first, so concurrent runs never see a partially written file.
+		Path tempFile = Files.createTempFile(directory.toPath(), cacheFile.getName(), ".tmp");
+		try {
+			try (OutputStream out = Files.newOutputStream(tempFile)) {
+				scenario.writeTo(out);
+			}
+			Files.move(tempFile, cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+}
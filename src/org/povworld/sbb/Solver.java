@@ -1,20 +1,39 @@
 package org.povworld.sbb;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
 import java.time.LocalDateTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.annotation.CheckForNull;
+import javax.management.ObjectName;
+
 import org.povworld.backtrack.BoostingDirector;
 import org.povworld.backtrack.Director;
+import org.povworld.backtrack.Executor;
 import org.povworld.backtrack.HardCollectingDirector;
+import org.povworld.backtrack.InstrumentedExecutor;
+import org.povworld.backtrack.ParallelDirector;
+import org.povworld.backtrack.PortfolioDirector;
 import org.povworld.backtrack.PriorityConflictDirector;
+import org.povworld.backtrack.SearchMetrics;
 import org.povworld.collection.Map;
 import org.povworld.collection.Set;
 import org.povworld.collection.common.Interval;
 import org.povworld.collection.common.ObjectUtil;
+import org.povworld.collection.mutable.ArrayList;
 import org.povworld.collection.mutable.HashMap;
 import org.povworld.collection.mutable.HashSet;
 import org.povworld.sbb.ConnectionRepository.Connection;
@@ -34,34 +53,67 @@ public class Solver {
     private final double maxPenalty;
     private final ConnectionRepository connections;
     
-    private static class Args {
+    private volatile boolean cancelled = false;
+    @CheckForNull
+    private volatile Director<State, Conflict, ConflictSchedule> director = null;
+    @CheckForNull
+    private SearchMetrics metrics = null;
+    
+    static class Args implements Cloneable {
         String inputFile = "";
         String outputFile = "";
+        String scenarioCache = "";
         double maxPenalty = 0;
         
         double maxPenaltyPerIntention = 14;
         double connectionBadnessFactor = 7.5;
         
         DirectorType directorType = DirectorType.HARD_COLLECTING;
+        boolean splitComponents = false;
+        long timeLimit = 0;
+        long metricsInterval = 0;
+        int servePort = 0;
+        int workers = 1;
+        
+        Args copy() {
+            try {
+                return (Args) clone();
+            } catch (CloneNotSupportedException e) {
+                throw new AssertionError(e);
+            }
+        }
         
         @Override
         public String toString() {
 			return "input=" + inputFile + ", output=" + outputFile +
+					", scenario_cache=" + scenarioCache +
 					", max_penalty_per_intention=" + maxPenaltyPerIntention +
 					", max_penalty=" + maxPenalty +
 					", connection_badness_factor="+connectionBadnessFactor +
-					", director_type="+directorType;
+					", director_type="+directorType +
+					", split_components="+splitComponents +
+					", time_limit="+timeLimit +
+					", metrics="+metricsInterval +
+					", serve="+servePort +
+					", workers="+workers;
         }
     }
     
     public Solver(Problem problem, double maxPenalty) {
         this.problem = problem;
-        this.connections = ConnectionRepository.create(problem.getScenario());
+        this.connections = ConnectionRepository.create(problem);
         this.maxPenalty = maxPenalty;
     }
     
-    private static Args parseArgs(String[] args) {
-        Args result = new Args();
+    static Args parseArgs(String[] args) {
+        return parseArgs(args, new Args());
+    }
+    
+    /**
+     * Parses the arguments into the given {@code result}, keeping its values for flags which are
+     * not given.
+     */
+    static Args parseArgs(String[] args, Args result) {
         int files = 0;
         for (int i = 0; i < args.length; ++i) {
             String arg = args[i];
@@ -83,6 +135,29 @@ public class Solver {
                     	i++;
                     	result.directorType = DirectorType.valueOf(args[i]);
                     	break;
+                    case "scenario_cache":
+                    	i++;
+                    	result.scenarioCache = args[i];
+                    	break;
+                    case "split_components":
+                    	result.splitComponents = true;
+                    	break;
+                    case "time_limit":
+                    	i++;
+                    	result.timeLimit = Long.parseLong(args[i]);
+                    	break;
+                    case "metrics":
+                    	i++;
+                    	result.metricsInterval = Long.parseLong(args[i]);
+                    	break;
+                    case "serve":
+                    	i++;
+                    	result.servePort = Integer.parseInt(args[i]);
+                    	break;
+                    case "workers":
+                    	i++;
+                    	result.workers = Integer.parseInt(args[i]);
+                    	break;
                     default:
                         throw new IllegalArgumentException("Unknown command line flag " + arg);
                 }
@@ -97,6 +172,9 @@ public class Solver {
                 }
             }
         }
+        if (result.timeLimit > 0 && result.splitComponents) {
+            throw new IllegalArgumentException("time_limit cannot be combined with split_components!");
+        }
         return result;
     }
     
@@ -109,27 +187,118 @@ public class Solver {
         Debug.MAX_PENALTY_PER_INTENTION = arguments.maxPenaltyPerIntention;
         Debug.CONNECTION_LATE_PROBABILITY_TO_BADNESS_FACTOR = arguments.connectionBadnessFactor;
         
-        Scenario scenario = InputParser.parseScenario(new File(arguments.inputFile));
-        logger.log(Level.INFO, "Parsed input file " + arguments.inputFile);
-        Problem problem = new Problem(scenario);
-        Solution solution = new Solver(problem, arguments.maxPenalty).solve(arguments.directorType);
-        if (!arguments.outputFile.isEmpty()) {
-            try (FileWriter writer = new FileWriter(new File(arguments.outputFile))) {
-                writer.write(OutputBuilder.serializeSolution(solution));
+        SearchMetrics metrics = null;
+        ScheduledExecutorService metricsReporter = null;
+        if (arguments.metricsInterval > 0) {
+            SearchMetrics reported = new SearchMetrics();
+            ManagementFactory.getPlatformMBeanServer().registerMBean(reported,
+                    new ObjectName("org.povworld.sbb:type=SearchMetrics"));
+            metricsReporter = Executors.newSingleThreadScheduledExecutor();
+            metricsReporter.scheduleAtFixedRate(() -> logger.log(Level.INFO, "Metrics: " + reported.getSummary()),
+                    arguments.metricsInterval, arguments.metricsInterval, TimeUnit.SECONDS);
+            metrics = reported;
+        }
+        
+        if (arguments.servePort > 0) {
+            new SolverServer(arguments, metrics).serve();
+            return;
+        }
+        
+        Problem problem = new Problem(loadScenario(arguments));
+        Solver solver = new Solver(problem, arguments.maxPenalty);
+        solver.setMetrics(metrics);
+        CountDownLatch written = new CountDownLatch(1);
+        if (arguments.timeLimit > 0) {
+            // On SIGTERM stop the search and keep the JVM alive until the best solution is written.
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                solver.cancel();
+                try {
+                    written.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+        try {
+            Solution solution = solve(solver, arguments);
+            if (!arguments.outputFile.isEmpty()) {
+                try (FileWriter writer = new FileWriter(new File(arguments.outputFile))) {
+                    writer.write(OutputBuilder.serializeSolution(solution));
+                }
+                logger.log(Level.INFO, "Wrote solution to " + arguments.outputFile);
+            }
+        } finally {
+            written.countDown();
+            if (metricsReporter != null) {
+                metricsReporter.shutdownNow();
+                logger.log(Level.INFO, "Metrics: " + metrics.getSummary());
             }
-            logger.log(Level.INFO, "Wrote solution to " + arguments.outputFile);
         }
         logger.log(Level.INFO, "Used " + stopwatch.elapsed(TimeUnit.SECONDS) + "s.");
     }
     
+    static Scenario loadScenario(Args arguments) throws IOException {
+        File inputFile = new File(arguments.inputFile);
+        Scenario scenario;
+        if (inputFile.getName().endsWith(".pb")) {
+            // Already parsed scenario in protobuf binary format, e.g. from the scenario cache.
+            try (InputStream input = new FileInputStream(inputFile)) {
+                scenario = Scenario.parseFrom(input);
+            }
+        } else if (arguments.scenarioCache.isEmpty()) {
+            scenario = InputParser.parseScenario(inputFile);
+        } else {
+            scenario = new ScenarioCache(new File(arguments.scenarioCache)).load(inputFile);
+        }
+        logger.log(Level.INFO, "Parsed input file " + arguments.inputFile);
+        return scenario;
+    }
+    
+    static Solution solve(Solver solver, Args arguments) throws InterruptedException {
+        if (arguments.timeLimit > 0) {
+            return solver.solveAnytime(arguments.directorType, arguments.timeLimit);
+        } else if (arguments.splitComponents) {
+            return solver.solveComponents(arguments.directorType);
+        } else {
+            return solver.solve(arguments.directorType);
+        }
+    }
+    
     enum DirectorType {
     	PRIORITY_CONFLICT,
     	BOOSTING,
     	HARD_COLLECTING,
+    	/** Races all of the above on separate threads. */
+    	PORTFOLIO,
+    	/** Fork-join search over the shallow decisions, HARD_COLLECTING below. */
+    	PARALLEL,
+    }
+    
+    /**
+     * Records search metrics of all following searches, see {@link SearchMetrics}.
+     */
+    public void setMetrics(@CheckForNull SearchMetrics metrics) {
+        this.metrics = metrics;
     }
     
 	private Director<State, Conflict, ConflictSchedule> createDirector(DirectorType directorType, SbbExecutor executor,
-			ConflictBooster conflictBooster) {
+			ConflictBooster conflictBooster, double maxPenalty) {
+		Director<State, Conflict, ConflictSchedule> director = createUninstrumentedDirector(directorType,
+				instrument(executor), conflictBooster, maxPenalty);
+		director.setMetrics(metrics);
+		return director;
+	}
+
+	private Executor<State, Conflict, ConflictSchedule> instrument(SbbExecutor executor) {
+		if (metrics == null) {
+			return executor;
+		}
+		executor.setMetrics(metrics);
+		return new InstrumentedExecutor<>(executor, metrics);
+	}
+
+	private Director<State, Conflict, ConflictSchedule> createUninstrumentedDirector(DirectorType directorType,
+			Executor<State, Conflict, ConflictSchedule> executor, ConflictBooster conflictBooster, double maxPenalty) {
 		switch (directorType) {
 		case PRIORITY_CONFLICT:
 			return new PriorityConflictDirector<>(executor, Debug.SOLVER, Debug.MAX_PRIORITY_LIST_SIZE);
@@ -137,37 +306,178 @@ public class Solver {
 			return new BoostingDirector<>(executor, conflictBooster, 6, Debug.SOLVER);
 		case HARD_COLLECTING:
 			return new HardCollectingDirector<>(executor, Debug.SOLVER);
+		case PORTFOLIO: {
+			// Every member gets its own executor and booster as both are mutated while searching.
+			ArrayList<Director<State, Conflict, ConflictSchedule>> members = new ArrayList<>();
+			for (DirectorType memberType : new DirectorType[] {
+					DirectorType.HARD_COLLECTING, DirectorType.PRIORITY_CONFLICT, DirectorType.BOOSTING }) {
+				ConflictBooster memberBooster = new ConflictBooster();
+				SbbExecutor memberExecutor = new SbbExecutor(problem, maxPenalty, connections, memberBooster);
+				members.push(createDirector(memberType, memberExecutor, memberBooster, maxPenalty));
+			}
+			return new PortfolioDirector<>(members, Debug.SOLVER);
+		}
+		case PARALLEL:
+			return new ParallelDirector<>(executor, () -> {
+				ConflictBooster taskBooster = new ConflictBooster();
+				SbbExecutor taskExecutor = new SbbExecutor(problem, maxPenalty, connections, taskBooster);
+				return createDirector(DirectorType.HARD_COLLECTING, taskExecutor, taskBooster, maxPenalty);
+			}, Debug.PARALLEL_SPLIT_DEPTH, Runtime.getRuntime().availableProcessors(), Debug.SOLVER);
 		default:
 			throw new RuntimeException("Unknown director type: " + directorType);
 		}
 	}
     
     public Output.Solution solve(DirectorType directorType) {
+        Map<String, PathSchedule> schedules = solveSchedules(directorType);
+        logPenalty(schedules);
+        return OutputBuilder.createSolution(problem, schedules);
+    }
+    
+    /**
+     * Solves the independent sub-problems of the problem concurrently, each with its own
+     * director, and merges their solutions, see {@link Problem#splitComponents()}. Every
+     * sub-problem is searched with the whole penalty budget. If their penalties add up to more
+     * than the budget, the problem is solved as a whole instead.
+     */
+    public Output.Solution solveComponents(DirectorType directorType) throws InterruptedException {
+        ArrayList<Problem> components = problem.splitComponents();
+        logger.log(Level.INFO, "Split problem into " + components.size() + " components.");
+        if (components.size() <= 1) {
+            return solve(directorType);
+        }
+        
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Math.min(components.size(), Runtime.getRuntime().availableProcessors()));
+        ArrayList<Future<Map<String, PathSchedule>>> futures = new ArrayList<>(components.size());
+        try {
+            for (Problem component : components) {
+                Solver componentSolver = new Solver(component, maxPenalty);
+                componentSolver.setMetrics(metrics);
+                futures.push(pool.submit(() -> componentSolver.solveSchedules(directorType)));
+            }
+            HashMap<String, PathSchedule> schedules = new HashMap<>();
+            ArrayList<Solution> solutions = new ArrayList<>(components.size());
+            for (int i = 0; i < components.size(); ++i) {
+                Map<String, PathSchedule> componentSchedules;
+                try {
+                    componentSchedules = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    throw new RuntimeException("Failed to solve component " + i, e.getCause());
+                }
+                for (String intention : componentSchedules.keys()) {
+                    schedules.put(intention, componentSchedules.get(intention));
+                }
+                solutions.push(OutputBuilder.createSolution(components.get(i), componentSchedules));
+            }
+            logPenalty(schedules);
+            
+            if (getTotalPenalty(schedules) > maxPenalty) {
+                logger.log(Level.INFO, "Penalty of components exceeds " + maxPenalty + ", solving as a whole.");
+                return solve(directorType);
+            }
+            return OutputBuilder.mergeSolutions(problem, solutions);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+    
+    /**
+     * Searches for solutions with decreasing penalties until the time limit has passed, no better
+     * solution exists or {@link #cancel()} is called. Every solution found lowers the penalty bound
+     * of the next search below its total penalty. Returns the solution with the lowest penalty.
+     */
+    public Output.Solution solveAnytime(DirectorType directorType, long timeLimitSeconds) {
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+        timer.schedule(this::cancel, timeLimitSeconds, TimeUnit.SECONDS);
+        try {
+            Map<String, PathSchedule> best = null;
+            double bestPenalty = Double.POSITIVE_INFINITY;
+            double bound = maxPenalty;
+            while (bound >= 0 && !cancelled) {
+                Map<String, PathSchedule> schedules = searchSchedules(directorType, bound);
+                if (schedules == null) {
+                    break;
+                }
+                double penalty = getTotalPenalty(schedules);
+                logger.log(Level.INFO, "Found solution with penalty " + penalty + " (bound " + bound + ").");
+                if (penalty < bestPenalty) {
+                    best = schedules;
+                    bestPenalty = penalty;
+                }
+                bound = Math.min(bound, penalty) - Debug.ANYTIME_PENALTY_STEP;
+            }
+            if (best == null) {
+                throw new RuntimeException("No solution found within " + timeLimitSeconds + "s!");
+            }
+            logPenalty(best);
+            return OutputBuilder.createSolution(problem, best);
+        } finally {
+            timer.shutdownNow();
+        }
+    }
+    
+    /**
+     * Stops a running search of this solver. An anytime search returns its best solution so far.
+     */
+    public void cancel() {
+        cancelled = true;
+        Director<State, Conflict, ConflictSchedule> current = director;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+    
+    private Map<String, PathSchedule> solveSchedules(DirectorType directorType) {
+        Map<String, PathSchedule> schedules = searchSchedules(directorType, maxPenalty);
+        if (schedules == null) {
+            throw new RuntimeException("Unsolvable problem!");
+        }
+        return schedules;
+    }
+    
+    @CheckForNull
+    private Map<String, PathSchedule> searchSchedules(DirectorType directorType, double maxPenalty) {
         ConflictBooster conflictBooster = new ConflictBooster();
         SbbExecutor executor = new SbbExecutor(problem, maxPenalty, connections, conflictBooster);
         State initialState = executor.createInitialState();
         if (initialState == null) {
-            throw new RuntimeException("unsolveable!");
+            return null;
         }
         
-        Director<State, Conflict, ConflictSchedule> director = createDirector(directorType, executor, conflictBooster);
+        Director<State, Conflict, ConflictSchedule> director = createDirector(directorType, executor, conflictBooster, maxPenalty);
+        this.director = director;
+        if (cancelled) {
+            director.cancel();
+        }
         
         State solution = director.work(initialState);
+        this.director = null;
         if (solution == null) {
-            throw new RuntimeException("Unsolvable problem!");
+            return null;
         }
         logger.log(Level.INFO, "Successfully resolved all conflicts!");
         
         if (Debug.PRINT_SCHEDULE_AND_PLANS) {
-            for (ResourcePlan plan: solution.resourcePlans.values()) {
-                plan.printOccupations();
+            for (int resource = 0; resource < solution.resourcePlans.size(); ++resource) {
+                solution.resourcePlans.get(resource).printOccupations();
             }
         }
         
         checkConnectionTimes(solution);
         
-        Map<String, PathSchedule> schedules = scheduleIntentions(solution);
-        
+        return scheduleIntentions(solution);
+    }
+    
+    private static double getTotalPenalty(Map<String, PathSchedule> schedules) {
+        double totalPenalty = 0.0;
+        for (PathSchedule schedule: schedules.values()) {
+            totalPenalty += schedule.getTotalPenalty();
+        }
+        return totalPenalty;
+    }
+    
+    private static void logPenalty(Map<String, PathSchedule> schedules) {
         double pathPenalty = 0.0;
         double totalPenalty = 0.0;
         double maxPenaltyPerIntention = 0;
@@ -178,8 +488,6 @@ public class Solver {
         }
         logger.info("Penalty: path=" + pathPenalty + " total=" + totalPenalty + " max per intention="
                 + maxPenaltyPerIntention);
-        
-        return OutputBuilder.createSolution(problem, schedules);
     }
     
     private void checkConnectionTimes(State state) {
@@ -202,7 +510,7 @@ public class Solver {
         HashMap<String, PathSchedule> schedules = new HashMap<>();
         for (ServiceIntention si: problem.getScenario().getServiceIntentionsList()) {
             String intention = si.getId();
-            GraphConstraints constraints = state.graphConstraints.get(intention);
+            GraphConstraints constraints = state.graphConstraints.get(problem.getIntentionIndex(intention));
             PathSchedule schedule = constraints.scheduleMinimumPenaltyPath();
             registerSchedule(resourceAllocators, si.getRoute(), schedule);
             schedules.put(intention, schedule);
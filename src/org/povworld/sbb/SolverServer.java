@@ -0,0 +1,243 @@
+package org.povworld.sbb;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+
+import org.povworld.backtrack.SearchMetrics;
+import org.povworld.collection.mutable.ArrayList;
+import org.povworld.collection.mutable.HashMap;
+import org.povworld.sbb.Output.Solution;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+/**
+ * Solves jobs sent over a local socket, so that a batch of problem instances is solved in one warm
+ * JVM instead of paying for start-up, class loading and JIT compilation on every instance.
+ * <p>
+ * Every connection submits one job as a single line with the arguments of {@link Solver#main}: the
+ * input file and per-job flags, separated by whitespace. Arguments containing whitespace are
+ * enclosed in double quotes. Flags which are not given default to the ones the server was started
+ * with. Input files ending in {@code .pb} are read as scenarios in protobuf binary format. The jobs
+ * are queued and solved by a pool of {@code workers} threads. The server replies with a line
+ * {@code OK}, followed by the solution as JSON, or with a line {@code ERROR} and the reason.
+ * <p>
+ * Any local process can submit jobs, so the server never writes files on behalf of a job: jobs
+ * cannot name an output file or change the scenario cache, and input files must lie within the
+ * working directory of the server.
+ * <p>
+ * The problems of the most recent inputs are kept, keyed by the hash of the input file's content,
+ * so that repeated jobs on the same instance neither parse it nor build its route graphs again.
+ * {@code max_penalty_per_intention} and {@code connection_badness_factor} are shared by all jobs
+ * (see {@link Debug}) and cannot be changed per job.
+ */
+class SolverServer {
+
+	private static final Logger logger = Logger.getLogger(SolverServer.class.getSimpleName());
+
+	private static final int PROBLEM_CACHE_SIZE = 8;
+
+	private final Solver.Args defaults;
+	@CheckForNull
+	private final SearchMetrics metrics;
+	// Guarded by itself.
+	private final HashMap<String, Problem> problems = new HashMap<>();
+	// Keys of the cached problems, the least recently used first. Guarded by problems.
+	private final ArrayList<String> recentKeys = new ArrayList<>();
+
+	SolverServer(Solver.Args defaults, @CheckForNull SearchMetrics metrics) {
+		this.defaults = defaults;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Serves jobs on the configured port of the loopback address until the process is terminated.
+	 */
+	void serve() throws IOException {
+		try (ServerSocket serverSocket = new ServerSocket(defaults.servePort, 50, InetAddress.getLoopbackAddress())) {
+			serve(serverSocket);
+		}
+	}
+
+	/**
+	 * Serves jobs on the given socket until it is closed.
+	 */
+	void serve(ServerSocket serverSocket) throws IOException {
+		logger.log(Level.INFO, "Serving on port " + serverSocket.getLocalPort() + " with " + defaults.workers
+				+ " workers.");
+		ExecutorService workers = Executors.newFixedThreadPool(defaults.workers);
+		try {
+			while (!serverSocket.isClosed()) {
+				Socket socket;
+				try {
+					socket = serverSocket.accept();
+				} catch (IOException e) {
+					if (serverSocket.isClosed()) {
+						break;
+					}
+					throw e;
+				}
+				workers.execute(() -> handle(socket));
+			}
+		} finally {
+			workers.shutdown();
+		}
+	}
+
+	private void handle(Socket socket) {
+		try (Socket connection = socket;
+				BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), UTF_8));
+				Writer writer = new BufferedWriter(new OutputStreamWriter(connection.getOutputStream(), UTF_8))) {
+			String request = reader.readLine();
+			String response;
+			try {
+				response = "OK\n" + run(request);
+			} catch (Exception e) {
+				logger.log(Level.WARNING, "Failed job: " + request, e);
+				response = "ERROR " + e.getMessage() + "\n";
+			}
+			writer.write(response);
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Failed to reply to job", e);
+		}
+	}
+
+	/**
+	 * Solves the job given by the arguments in {@code request}.
+	 *
+	 * @return the solution as JSON
+	 */
+	String run(@CheckForNull String request) throws IOException, InterruptedException {
+		if (request == null || request.trim().isEmpty()) {
+			throw new IllegalArgumentException("Empty job!");
+		}
+		Solver.Args job = Solver.parseArgs(splitArguments(request), defaults.copy());
+		checkJob(job);
+
+		Stopwatch stopwatch = Stopwatch.createStarted();
+		Solver solver = new Solver(getProblem(job), job.maxPenalty);
+		solver.setMetrics(metrics);
+		Solution solution = Solver.solve(solver, job);
+		String json = OutputBuilder.serializeSolution(solution);
+		logger.log(Level.INFO, "Solved " + job.inputFile + " in " + stopwatch.elapsed(TimeUnit.MILLISECONDS) + "ms.");
+		return json + "\n";
+	}
+
+	/**
+	 * Splits a job line into arguments at whitespace. Double quotes group characters including
+	 * whitespace into one argument and are removed.
+	 */
+	static String[] splitArguments(String request) {
+		ArrayList<String> arguments = new ArrayList<>();
+		StringBuilder argument = new StringBuilder();
+		boolean inArgument = false;
+		boolean quoted = false;
+		for (int i = 0; i < request.length(); ++i) {
+			char c = request.charAt(i);
+			if (c == '"') {
+				quoted = !quoted;
+				inArgument = true;
+			} else if (Character.isWhitespace(c) && !quoted) {
+				if (inArgument) {
+					arguments.push(argument.toString());
+					argument.setLength(0);
+					inArgument = false;
+				}
+			} else {
+				argument.append(c);
+				inArgument = true;
+			}
+		}
+		if (quoted) {
+			throw new IllegalArgumentException("Unterminated quote in job!");
+		}
+		if (inArgument) {
+			arguments.push(argument.toString());
+		}
+		String[] result = new String[arguments.size()];
+		for (int i = 0; i < result.length; ++i) {
+			result[i] = arguments.get(i);
+		}
+		return result;
+	}
+
+	private void checkJob(Solver.Args job) throws IOException {
+		if (job.inputFile.isEmpty()) {
+			throw new IllegalArgumentException("No input file given!");
+		}
+		File workingDirectory = new File("").getCanonicalFile();
+		if (!new File(job.inputFile).getCanonicalFile().toPath().startsWith(workingDirectory.toPath())) {
+			throw new IllegalArgumentException("Input file must be within " + workingDirectory + "!");
+		}
+		if (!job.outputFile.isEmpty()) {
+			throw new IllegalArgumentException("Jobs cannot write output files, the solution is returned instead!");
+		}
+		if (!job.scenarioCache.equals(defaults.scenarioCache)) {
+			throw new IllegalArgumentException("scenario_cache cannot be changed per job!");
+		}
+		if (job.maxPenaltyPerIntention != defaults.maxPenaltyPerIntention
+				|| job.connectionBadnessFactor != defaults.connectionBadnessFactor) {
+			throw new IllegalArgumentException(
+					"max_penalty_per_intention and connection_badness_factor cannot be changed per job!");
+		}
+		if (job.servePort != defaults.servePort || job.workers != defaults.workers
+				|| job.metricsInterval != defaults.metricsInterval) {
+			throw new IllegalArgumentException("serve, workers and metrics cannot be changed per job!");
+		}
+	}
+
+	private Problem getProblem(Solver.Args job) throws IOException {
+		String key = Files.asByteSource(new File(job.inputFile)).hash(Hashing.sha256()).toString();
+		synchronized (problems) {
+			Problem problem = problems.get(key);
+			if (problem != null) {
+				markUsed(key);
+				logger.log(Level.INFO, "Reusing problem of " + job.inputFile);
+				return problem;
+			}
+		}
+		// Concurrent jobs on a new input may both build the problem, the last one is kept.
+		Problem problem = new Problem(Solver.loadScenario(job));
+		synchronized (problems) {
+			problems.put(key, problem);
+			markUsed(key);
+		}
+		return problem;
+	}
+
+	/**
+	 * Moves the key to the end of the recently used keys and evicts the least recently used
+	 * problem if the cache is full. Must hold the lock of {@link #problems}.
+	 */
+	private void markUsed(String key) {
+		for (int i = 0; i < recentKeys.size(); ++i) {
+			if (recentKeys.get(i).equals(key)) {
+				recentKeys.removeElementAt(i);
+				break;
+			}
+		}
+		recentKeys.push(key);
+		if (recentKeys.size() > PROBLEM_CACHE_SIZE) {
+			problems.remove(recentKeys.removeElementAt(0));
+		}
+	}
+
+}
@@ -1,19 +1,66 @@
 package org.povworld.sbb;
 
-import org.povworld.collection.persistent.PersistentMap;
+import javax.annotation.CheckForNull;
 
 public class State {
+	private static final long MIN_PENALTY_POSITION = -2;
+
 	// Warning: ResourecPlan and GraphConstraints are not immutable!
 	// They must be copied before modification!
-	public final PersistentMap<String, ResourcePlan> resourcePlans;
-	public final PersistentMap<String, GraphConstraints> graphConstraints;
+	// The arrays must not be modified either, but copied before.
+	// Indexed by the resource and intention indices of the Problem.
+	public final ChunkedArray<ResourcePlan> resourcePlans;
+	public final ChunkedArray<GraphConstraints> graphConstraints;
 	public final double minPenalty;
-	
-	public State(PersistentMap<String, ResourcePlan> resourcePlans, 
-			PersistentMap<String, GraphConstraints> graphConstraints,
-			double minPenalty) {
+	// Null only for the initial state before the resource plans have been synced.
+	@CheckForNull
+	public final ConflictIndex conflictIndex;
+	// The conflict index re-evaluated with newer boosts than conflictIndex, kept so that it is only
+	// computed once. Written racily, but any of the written indices is correct.
+	@CheckForNull
+	private volatile ConflictIndex reboostedConflictIndex = null;
+	// Hash of the graph constraints and the min penalty. The resource plans and the conflict index
+	// are derived from the graph constraints.
+	public final long fingerprint;
+
+	State(ChunkedArray<ResourcePlan> resourcePlans,
+			ChunkedArray<GraphConstraints> graphConstraints,
+			double minPenalty,
+			@CheckForNull ConflictIndex conflictIndex,
+			long fingerprint) {
 		this.resourcePlans = resourcePlans;
 		this.graphConstraints = graphConstraints;
 		this.minPenalty = minPenalty;
+		this.conflictIndex = conflictIndex;
+		this.fingerprint = fingerprint;
+	}
+
+	/**
+	 * @return the conflict index with the most recent boosts known for this state
+	 */
+	@CheckForNull
+	ConflictIndex getLatestConflictIndex() {
+		ConflictIndex reboosted = reboostedConflictIndex;
+		return (reboosted == null) ? conflictIndex : reboosted;
+	}
+
+	void setReboostedConflictIndex(ConflictIndex reboostedConflictIndex) {
+		this.reboostedConflictIndex = reboostedConflictIndex;
+	}
+
+	static long computeFingerprint(ChunkedArray<GraphConstraints> graphConstraints, double minPenalty) {
+		long result = fingerprint(minPenalty);
+		for (int intention = 0; intention < graphConstraints.size(); ++intention) {
+			result ^= fingerprint(intention, graphConstraints.get(intention));
+		}
+		return result;
+	}
+
+	static long fingerprint(int intention, GraphConstraints constraints) {
+		return Fingerprint.key(intention, constraints.getFingerprint());
+	}
+
+	static long fingerprint(double minPenalty) {
+		return Fingerprint.key(MIN_PENALTY_POSITION, minPenalty);
 	}
 }
@@ -0,0 +1,42 @@
+package org.povworld.sbb;
+
+import org.povworld.collection.common.ObjectUtil;
+import org.povworld.collection.mutable.ArrayList;
+import org.povworld.collection.mutable.HashMap;
+
+/**
+ * Maps string ids to dense indices {@code 0..size()-1} in the order they were added.
+ */
+public class SymbolTable {
+
+	private final HashMap<String, Integer> indices = new HashMap<>();
+	private final ArrayList<String> ids = new ArrayList<>();
+
+	/**
+	 * Adds the given id unless it is already known.
+	 *
+	 * @return the index of {@code id}
+	 */
+	public int add(String id) {
+		Integer index = indices.get(id);
+		if (index != null) {
+			return index;
+		}
+		indices.put(id, ids.size());
+		ids.push(id);
+		return ids.size() - 1;
+	}
+
+	public int indexOf(String id) {
+		return ObjectUtil.checkNotNull(indices.get(id));
+	}
+
+	public String get(int index) {
+		return ids.get(index);
+	}
+
+	public int size() {
+		return ids.size();
+	}
+
+}
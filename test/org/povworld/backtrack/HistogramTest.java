@@ -0,0 +1,44 @@
+package org.povworld.backtrack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HistogramTest {
+
+	@Test
+	public void bucketBoundariesRoundTrip() {
+		for (long value : new long[] { 0, 1, 15, 16, 17, 31, 32, 33, 1000, 123456789, Long.MAX_VALUE }) {
+			int index = Histogram.indexOf(value);
+			long lowest = Histogram.lowestValueAt(index);
+			assertTrue(lowest <= value);
+			assertEquals(index, Histogram.indexOf(lowest));
+			assertTrue(value - lowest <= lowest / 16);
+		}
+	}
+
+	@Test
+	public void percentiles() {
+		Histogram histogram = new Histogram();
+		for (int i = 1; i <= 100; ++i) {
+			histogram.record(i);
+		}
+		assertEquals(100, histogram.getCount());
+		assertEquals(50.5, histogram.getMean(), 1e-9);
+		assertEquals(100, histogram.getMax());
+		assertEquals(1, histogram.getValueAtPercentile(0));
+		assertEquals(100, histogram.getValueAtPercentile(100));
+		long median = histogram.getValueAtPercentile(50);
+		assertTrue(median >= 50 && median <= 53);
+	}
+
+	@Test
+	public void empty() {
+		Histogram histogram = new Histogram();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMean(), 0);
+		assertEquals(0, histogram.getValueAtPercentile(99));
+	}
+
+}
@@ -0,0 +1,58 @@
+package org.povworld.backtrack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.povworld.collection.Set;
+import org.povworld.collection.mutable.HashSet;
+
+public class NogoodStoreTest {
+
+	private static Set<String> options(String... options) {
+		HashSet<String> result = new HashSet<>();
+		for (String option : options) {
+			result.add(option);
+		}
+		return result;
+	}
+
+	@Test
+	public void nogoodMatchesSupersets() {
+		NogoodStore<String> store = new NogoodStore<>(10);
+		assertFalse(store.contains("x"));
+		store.markFailed("x");
+		assertTrue(store.contains("x"));
+		assertFalse(store.isNogood("x", options("a", "b")));
+
+		store.add("x", options("a", "b"));
+		assertTrue(store.isNogood("x", options("a", "b")));
+		assertTrue(store.isNogood("x", options("b", "c", "a")));
+		assertFalse(store.isNogood("x", options("a", "c")));
+		assertFalse(store.isNogood("y", options("a", "b")));
+		assertEquals(2, store.getHits());
+	}
+
+	@Test
+	public void emptyNogoodAlwaysMatches() {
+		NogoodStore<String> store = new NogoodStore<>(10);
+		store.add("x", options("a", "b"));
+		store.add("x", options());
+		assertTrue(store.isNogood("x", options()));
+		assertTrue(store.isNogood("x", options("c")));
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsed() {
+		NogoodStore<String> store = new NogoodStore<>(2);
+		store.add("x", options());
+		store.add("y", options());
+		assertTrue(store.isNogood("x", options()));
+		store.add("z", options());
+		assertTrue(store.contains("x"));
+		assertFalse(store.contains("y"));
+		assertTrue(store.contains("z"));
+	}
+
+}
@@ -0,0 +1,13 @@
+package org.povworld.backtrack;
+
+import java.util.logging.Level;
+
+public class ParallelDirectorTest extends AbstractDirectorTest {
+
+	@Override
+	protected <S, C, O> Director<S, C, O> createDirector(Executor<S, C, O> executor, Booster<C> booster) {
+		return new ParallelDirector<>(executor, () -> new HardCollectingDirector<>(executor, Level.FINE), 2, 4,
+				Level.FINE);
+	}
+
+}
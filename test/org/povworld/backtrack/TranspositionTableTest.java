@@ -0,0 +1,36 @@
+package org.povworld.backtrack;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TranspositionTableTest {
+
+	@Test
+	public void containsAddedFingerprints() {
+		TranspositionTable table = new TranspositionTable(16);
+		assertFalse(table.contains(0));
+		assertFalse(table.contains(42));
+		table.add(42);
+		table.add(-7);
+		assertTrue(table.contains(42));
+		assertTrue(table.contains(-7));
+		assertFalse(table.contains(43));
+	}
+
+	@Test
+	public void collisionReplacesOlderFingerprint() {
+		TranspositionTable table = new TranspositionTable(16);
+		table.add(3);
+		table.add(3 + 16);
+		assertFalse(table.contains(3));
+		assertTrue(table.contains(3 + 16));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void capacityMustBePowerOfTwo() {
+		new TranspositionTable(12);
+	}
+
+}
@@ -0,0 +1,62 @@
+package org.povworld.sbb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class ChunkedArrayTest {
+
+	@Test
+	public void testGetSet() {
+		ChunkedArray<String> array = new ChunkedArray<>(100);
+		assertEquals(100, array.size());
+		assertNull(array.get(0));
+		assertNull(array.get(99));
+
+		array.set(70, "a");
+		assertEquals("a", array.get(70));
+		assertNull(array.get(69));
+	}
+
+	@Test
+	public void testCopiesAreIndependent() {
+		ChunkedArray<String> original = new ChunkedArray<>(100);
+		original.set(1, "1");
+		ChunkedArray<String> copy = original.copy();
+
+		copy.set(1, "a");
+		original.set(2, "b");
+		ChunkedArray<String> copyOfCopy = copy.copy();
+		copyOfCopy.set(1, "c");
+		copyOfCopy.set(99, "d");
+
+		assertEquals("1", original.get(1));
+		assertEquals("b", original.get(2));
+		assertNull(original.get(99));
+		assertEquals("a", copy.get(1));
+		assertNull(copy.get(2));
+		assertNull(copy.get(99));
+		assertEquals("c", copyOfCopy.get(1));
+		assertEquals("d", copyOfCopy.get(99));
+	}
+
+	@Test
+	public void testCopiesOfSameOriginalAreIndependent() {
+		ChunkedArray<String> original = new ChunkedArray<>(100);
+		original.set(1, "1");
+		ChunkedArray<String> first = original.copy();
+		first.set(1, "a");
+		ChunkedArray<String> second = original.copy();
+		second.set(1, "b");
+		first.set(2, "c");
+
+		assertEquals("1", original.get(1));
+		assertNull(original.get(2));
+		assertEquals("a", first.get(1));
+		assertEquals("c", first.get(2));
+		assertEquals("b", second.get(1));
+		assertNull(second.get(2));
+	}
+
+}
@@ -0,0 +1,50 @@
+package org.povworld.sbb;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ChunkedIntArrayTest {
+
+	private static int[] range(int size) {
+		int[] values = new int[size];
+		for (int i = 0; i < size; ++i) {
+			values[i] = i;
+		}
+		return values;
+	}
+
+	@Test
+	public void testGetSet() {
+		ChunkedIntArray array = new ChunkedIntArray(range(100));
+		assertEquals(100, array.size());
+		assertEquals(0, array.get(0));
+		assertEquals(99, array.get(99));
+
+		array.set(70, -1);
+		assertEquals(-1, array.get(70));
+		assertEquals(69, array.get(69));
+	}
+
+	@Test
+	public void testCopiesAreIndependent() {
+		ChunkedIntArray original = new ChunkedIntArray(range(100));
+		ChunkedIntArray copy = original.copy();
+
+		copy.set(1, -1);
+		original.set(2, -2);
+		ChunkedIntArray copyOfCopy = copy.copy();
+		copyOfCopy.set(1, -3);
+		copyOfCopy.set(99, -4);
+
+		assertEquals(1, original.get(1));
+		assertEquals(-2, original.get(2));
+		assertEquals(99, original.get(99));
+		assertEquals(-1, copy.get(1));
+		assertEquals(2, copy.get(2));
+		assertEquals(99, copy.get(99));
+		assertEquals(-3, copyOfCopy.get(1));
+		assertEquals(-4, copyOfCopy.get(99));
+	}
+
+}
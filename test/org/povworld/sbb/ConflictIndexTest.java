@@ -0,0 +1,121 @@
+package org.povworld.sbb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+import org.povworld.sbb.Input.Connection;
+import org.povworld.sbb.Input.Resource;
+import org.povworld.sbb.Input.ResourceOccupations;
+import org.povworld.sbb.Input.Route;
+import org.povworld.sbb.Input.RoutePath;
+import org.povworld.sbb.Input.RouteSection;
+import org.povworld.sbb.Input.Scenario;
+import org.povworld.sbb.Input.SectionRequirement;
+import org.povworld.sbb.Input.ServiceIntention;
+
+public class ConflictIndexTest {
+
+	private static final double EPS = 1e-8;
+
+	private static Scenario createScenario(boolean withConnection) {
+		SectionRequirement.Builder exit1 = SectionRequirement.newBuilder().setExitLatest("07:20:00").setSectionMarker("S2");
+		if (withConnection) {
+			exit1.addConnections(Connection.newBuilder()
+					.setOntoServiceIntention("t2")
+					.setOntoSectionMarker("S2")
+					.setMinConnectionTimeSeconds(60));
+		}
+		ServiceIntention train1 = ServiceIntention.newBuilder()
+				.setId("t1")
+				.setRoute("r1")
+				.addSectionRequirements(SectionRequirement.newBuilder().setEntryEarliest("07:00:00").setSectionMarker("S1"))
+				.addSectionRequirements(exit1)
+				.build();
+		ServiceIntention train2 = ServiceIntention.newBuilder()
+				.setId("t2")
+				.setRoute("r1")
+				.addSectionRequirements(SectionRequirement.newBuilder().setEntryEarliest("07:01:00").setSectionMarker("S1"))
+				.addSectionRequirements(SectionRequirement.newBuilder().setExitLatest("07:20:00").setSectionMarker("S2"))
+				.build();
+
+		Route route1 = Route.newBuilder().setId("r1")
+			.addRoutePaths(RoutePath.newBuilder()
+					.addRouteSections(RouteSection.newBuilder()
+						.addSectionMarker("S1")
+						.addResourceOccupations(ResourceOccupations.newBuilder().setResource("R1"))
+						.setSequenceNumber(1)
+						.setMinimumRunningTimeSeconds(120))
+					.addRouteSections(RouteSection.newBuilder()
+						.addSectionMarker("S2")
+						.setSequenceNumber(2)
+						.addResourceOccupations(ResourceOccupations.newBuilder().setResource("R2"))
+						.setMinimumRunningTimeSeconds(180)))
+			.build();
+
+		return Scenario.newBuilder()
+					.setLabel("test")
+					.setHash(1)
+					.addServiceIntentions(train1)
+					.addServiceIntentions(train2)
+					.addRoutes(route1)
+					.addResources(Resource.newBuilder().setId("R1").setReleaseTimeSeconds(30))
+					.addResources(Resource.newBuilder().setId("R2").setReleaseTimeSeconds(30))
+					.build();
+	}
+
+	private static void assertSameConflict(Conflict expected, Conflict actual) {
+		if (expected == null) {
+			assertNull(actual);
+			return;
+		}
+		assertNotNull(actual);
+		assertEquals(expected.badness, actual.badness, EPS);
+		assertEquals(expected.resource, actual.resource);
+		assertEquals(expected.range, actual.range);
+	}
+
+	@Test
+	public void updatedIndexMatchesFullEvaluation() {
+		Problem problem = new Problem(createScenario(true));
+		ConnectionRepository connections = ConnectionRepository.create(problem);
+		ConflictBooster booster = new ConflictBooster();
+		SbbExecutor executor = new SbbExecutor(problem, 0, connections, booster);
+
+		State state = executor.createInitialState();
+		Conflict conflict = executor.getWorstConflict(state);
+		assertNotNull(conflict);
+
+		int applied = 0;
+		for (ConflictSchedule schedule : executor.getOptions(state, conflict)) {
+			State next = executor.apply(state, schedule);
+			if (next == null) {
+				continue;
+			}
+			applied++;
+			Conflict expected = ConflictIndex.create(next.resourcePlans, next.graphConstraints, connections, booster)
+					.getWorst();
+			assertSameConflict(expected, executor.getWorstConflict(next));
+		}
+		assertEquals(2, applied);
+	}
+
+	@Test
+	public void boostsAreAppliedToExistingIndex() {
+		Problem problem = new Problem(createScenario(false));
+		ConnectionRepository connections = ConnectionRepository.create(problem);
+		ConflictBooster booster = new ConflictBooster();
+		SbbExecutor executor = new SbbExecutor(problem, 0, connections, booster);
+
+		State state = executor.createInitialState();
+		Conflict conflict = executor.getWorstConflict(state);
+		assertNotNull(conflict.resource);
+
+		booster.boost(conflict);
+		Conflict boosted = executor.getWorstConflict(state);
+		assertEquals(conflict.resource, boosted.resource);
+		assertEquals(conflict.badness * booster.getBoost(conflict.resource), boosted.badness, EPS);
+	}
+
+}
@@ -18,7 +18,7 @@ public class ConnectionOccupationTest extends GraphTestBase {
 	}
 
 	private static Connection conn(int minTime) {
-		return new ConnectionRepository.Connection("from", "to", "X", "X", minTime);
+		return new ConnectionRepository.Connection("from", 0, "to", 1, "X", "X", minTime);
 	}
 
 	@Test
@@ -87,7 +87,7 @@ public class ConnectionOccupationTest extends GraphTestBase {
 		final Edge arrivalEdge = edges.get(1);
 		final Edge departureEdge = edges.get(3);
 		
-		Connection connection = new Connection("from", "to", "A", "B", 1);
+		Connection connection = new Connection("from", 0, "to", 1, "A", "B", 1);
 		ConnectionOccupation o = new ConnectionOccupation(
 				connection, 100, 200, 200, 300, 
 				ImmutableCollections.setOf(arrivalEdge), 
@@ -111,7 +111,7 @@ public class ConnectionOccupationTest extends GraphTestBase {
 		final Edge arrivalEdge = edges.get(1);
 		final Edge departureEdge = edges.get(3);
 		
-		Connection connection = new Connection("from", "to", "A", "B", 100);
+		Connection connection = new Connection("from", 0, "to", 1, "A", "B", 100);
 		ConnectionOccupation o = new ConnectionOccupation(
 				connection, 100, 400, 300, 700, 
 				ImmutableCollections.setOf(arrivalEdge), 
@@ -484,6 +484,22 @@ public class DensityMapTest {
 		assertEquals(new Interval(150, 280), map.getMax());
 	}
 	
+	@Test
+	public void maxWithMinOverlappersSameEnd() {
+		map.add("x", new Interval(100, 200), 1.0);
+		map.add("y", new Interval(150, 200), 2.0);
+		DensityMap.Max max = map.getMaxDensityWithInterval(2);
+		assertEquals(new Interval(150, 200), max.interval);
+		assertEquals(3.0, max.density, EPS);
+	}
+	
+	@Test
+	public void maxWithMinOverlappersNoOverlap() {
+		map.add("x", new Interval(100, 200), 1.0);
+		map.add("y", new Interval(200, 300), 2.0);
+		assertNull(map.getMaxDensityWithInterval(2).interval);
+	}
+	
 	@Test
 	public void getEntry() {
 		map.add("x", new Interval(100, 200), 1.0);
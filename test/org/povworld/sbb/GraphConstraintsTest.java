@@ -2,12 +2,16 @@ package org.povworld.sbb;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.BitSet;
+
 import org.junit.Test;
 import org.povworld.collection.Map;
 import org.povworld.collection.immutable.ImmutableCollections;
+import org.povworld.collection.mutable.HashMap;
 import org.povworld.sbb.RouteGraph.Edge;
 import org.povworld.sbb.RouteGraph.Node;
 
@@ -314,6 +318,52 @@ public class GraphConstraintsTest extends GraphTestBase {
 		Truth.assertThat(gtc.getInfeasibleEdges()).contains(edges.get(1));
 	}
 	
+	@Test
+	public void testFingerprintDoesNotDependOnOrderOfRestrictions() {
+		buildForkGraph();
+		GraphConstraints initial = GraphConstraints.create(graph, intention);
+		GraphConstraints gtc1 = initial.copy();
+		GraphConstraints gtc2 = initial.copy();
+		assertEquals(initial.getFingerprint(), gtc1.getFingerprint());
+		
+		gtc1.increaseEarliestEntry(edges.get(3), TimeUtil.parseTime("12:38:30"));
+		gtc1.decreaseLatestExit(edges.get(1), TimeUtil.parseTime("12:37:00"));
+		assertNotEquals(initial.getFingerprint(), gtc1.getFingerprint());
+		
+		gtc2.decreaseLatestExit(edges.get(1), TimeUtil.parseTime("12:37:00"));
+		assertNotEquals(gtc1.getFingerprint(), gtc2.getFingerprint());
+		gtc2.increaseEarliestEntry(edges.get(3), TimeUtil.parseTime("12:38:30"));
+		assertEquals(gtc1.getFingerprint(), gtc2.getFingerprint());
+	}
+	
+	@Test
+	public void testBulkRestrictionsEqualSingleRestrictions() {
+		buildForkGraph();
+		GraphConstraints initial = GraphConstraints.create(graph, intention);
+		GraphConstraints single = initial.copy();
+		GraphConstraints bulk = initial.copy();
+		
+		BitSet singleChanged = new BitSet();
+		single.increaseEarliestEntry(edges.get(1), TimeUtil.parseTime("12:25:00"), singleChanged);
+		single.increaseEarliestEntry(edges.get(3), TimeUtil.parseTime("12:38:30"), singleChanged);
+		single.decreaseLatestExit(edges.get(4), TimeUtil.parseTime("12:55:00"), singleChanged);
+		
+		HashMap<Edge, Integer> minTimes = new HashMap<>();
+		minTimes.put(edges.get(3), TimeUtil.parseTime("12:38:30"));
+		minTimes.put(edges.get(1), TimeUtil.parseTime("12:25:00"));
+		HashMap<Edge, Integer> maxTimes = new HashMap<>();
+		maxTimes.put(edges.get(4), TimeUtil.parseTime("12:55:00"));
+		BitSet bulkChanged = new BitSet();
+		bulk.increaseEarliestEntries(minTimes, bulkChanged);
+		bulk.decreaseLatestExits(maxTimes, bulkChanged);
+		
+		assertEquals(single.getFingerprint(), bulk.getFingerprint());
+		Truth.assertThat(bulk.getInfeasibleEdges()).containsExactlyElementsIn(single.getInfeasibleEdges());
+		BitSet missing = (BitSet) singleChanged.clone();
+		missing.andNot(bulkChanged);
+		assertTrue(missing.isEmpty());
+	}
+	
 	@Test
 	public void testForkGraphIncreaseMinTimeMakesPartInfeasible() {
 		buildForkGraph();
@@ -483,4 +533,86 @@ public class GraphConstraintsTest extends GraphTestBase {
 		assertEquals(time("12:07:00"), t.entryLatest);
 	}
 	
+	/**
+	 * Paths with the same penalties may differ, as paths arriving earlier are preferred over the
+	 * order of enumeration.
+	 */
+	private static void assertSamePenalty(PathSchedule expected, PathSchedule actual) {
+		assertEquals(expected.getTotalPenalty(), actual.getTotalPenalty(), EPS);
+		assertEquals(expected.getPathPenalty(), actual.getPathPenalty(), EPS);
+	}
+	
+	private static void assertSameSchedule(PathSchedule expected, PathSchedule actual) {
+		Truth.assertThat(actual.getPath().getEdges()).containsExactlyElementsIn(expected.getPath().getEdges()).inOrder();
+		for (int i = 0; i < expected.getPath().getEdges().size() - 1; ++i) {
+			assertEquals(expected.getNodeTime(i), actual.getNodeTime(i));
+		}
+		assertEquals(expected.getTotalPenalty(), actual.getTotalPenalty(), 0);
+		assertEquals(expected.getPathPenalty(), actual.getPathPenalty(), 0);
+	}
+	
+	@Test
+	public void testScheduleMinimumPenaltyPathMatchesEnumeration() {
+		for (Runnable builder : ImmutableCollections.<Runnable>listOf(this::buildSimplePath, this::buildForkGraph,
+				this::buildComplexGraph, this::buildSlowFastPathGraph)) {
+			builder.run();
+			GraphConstraints gtc = GraphConstraints.create(graph, intention);
+			assertSamePenalty(gtc.scheduleMinimumPenaltyPathByEnumeration(), gtc.scheduleMinimumPenaltyPath());
+		}
+	}
+	
+	@Test
+	public void testScheduleMinimumPenaltyPathPrefersEarlierArrivalOnEqualPenalty() {
+		buildComplexGraph();
+		GraphConstraints gtc = GraphConstraints.create(graph, intention);
+		PathSchedule enumerated = gtc.scheduleMinimumPenaltyPathByEnumeration();
+		PathSchedule schedule = gtc.scheduleMinimumPenaltyPath();
+		assertSamePenalty(enumerated, schedule);
+		int last = schedule.getPath().getEdges().size() - 2;
+		assertTrue(schedule.getNodeTime(last) < enumerated.getNodeTime(enumerated.getPath().getEdges().size() - 2));
+	}
+	
+	@Test
+	public void testScheduleMinimumPenaltyPathWithRestrictions() {
+		buildSlowFastPathGraph();
+		GraphConstraints gtc = GraphConstraints.create(graph, intention);
+		gtc.decreaseLatestExit(edges.get(5), time("12:15:00"));
+		assertSameSchedule(gtc.scheduleMinimumPenaltyPathByEnumeration(), gtc.scheduleMinimumPenaltyPath());
+		
+		gtc.decreaseLatestExit(edges.get(5), time("12:10:00"));
+		PathSchedule schedule = gtc.scheduleMinimumPenaltyPath();
+		assertSameSchedule(gtc.scheduleMinimumPenaltyPathByEnumeration(), schedule);
+		for (Edge edge : schedule.getPath().getEdges()) {
+			assertTrue(gtc.isFeasible(edge));
+		}
+	}
+	
+	@Test
+	public void testScheduleMinimumPenaltyPathWithDelay() {
+		buildSimplePath();
+		GraphConstraints gtc = GraphConstraints.create(graph, intention, 100);
+		gtc.increaseEarliestEntry(edges.get(3), time("12:55:00"));
+		
+		PathSchedule schedule = gtc.scheduleMinimumPenaltyPath();
+		assertEquals(5.0, schedule.getTotalPenalty(), EPS);
+		assertSameSchedule(gtc.scheduleMinimumPenaltyPathByEnumeration(), schedule);
+	}
+	
+	@Test
+	public void testScheduleMinimumPenaltyPathDropsDominatedLaterPaths() {
+		buildDiamondChainGraph(4);
+		GraphConstraints gtc = GraphConstraints.create(graph, intention);
+		assertSameSchedule(gtc.scheduleMinimumPenaltyPathByEnumeration(), gtc.scheduleMinimumPenaltyPath());
+		
+		// Building the graph enumerates its paths, so the chain cannot be much longer.
+		buildDiamondChainGraph(12);
+		gtc = GraphConstraints.create(graph, intention);
+		assertEquals(1, gtc.getSinkPathLabelCount());
+		PathSchedule schedule = gtc.scheduleMinimumPenaltyPath();
+		assertEquals(0.0, schedule.getTotalPenalty(), EPS);
+		for (Edge edge : schedule.getPath().getEdges()) {
+			assertEquals(0.0, edge.getPenalty(), 0);
+		}
+	}
+	
 }
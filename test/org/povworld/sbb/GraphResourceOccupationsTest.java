@@ -26,6 +26,9 @@ public class GraphResourceOccupationsTest extends GraphTestBase {
 			if (!actual.resource.equals(expected.resource)) {
 				return false;
 			}
+			if (actual.intentionIndex != expected.intentionIndex || actual.resourceIndex != expected.resourceIndex) {
+				return false;
+			}
 			if (actual.start != expected.start) {
 				return false;
 			}
@@ -52,21 +55,29 @@ public class GraphResourceOccupationsTest extends GraphTestBase {
 		return Truth.assertThat(occupation).comparingElementsUsing(new ResourceOccupationComparator());
 	}
 	
+	private static SymbolTable resources(String... ids) {
+		SymbolTable result = new SymbolTable();
+		for (String id : ids) {
+			result.add(id);
+		}
+		return result;
+	}
+	
 	@Test
 	public void testSimplePath() {
 		buildSimplePath();
 		Map<Integer, Node> nodes = buildNodeIndex(graph);
 		Map<Integer, Edge> edges = buildEdgeIndex(graph);
 		
-		GraphResourceOccupations gro = GraphResourceOccupations.create(graph, intention);
+		GraphResourceOccupations gro = GraphResourceOccupations.create(graph, intention, 0, resources("x", "y", "z"));
 		
 		Truth.assertThat(gro.getOccupiedResources()).containsExactly("x", "y", "z");
 		
-		ResourceOccupation xOcc = new ResourceOccupation(intention.getId(), "x", edges.get(2), edges.get(3),
+		ResourceOccupation xOcc = new ResourceOccupation(intention.getId(), 0, "x", 0, edges.get(2), edges.get(3),
 				ImmutableCollections.listOf(edges.get(2), edges.get(3)), 50);
-		ResourceOccupation yOcc = new ResourceOccupation(intention.getId(), "y", edges.get(3), edges.get(5),
+		ResourceOccupation yOcc = new ResourceOccupation(intention.getId(), 0, "y", 1, edges.get(3), edges.get(5),
 				ImmutableCollections.listOf(edges.get(3), edges.get(4), edges.get(5)), 100);
-		ResourceOccupation zOcc = new ResourceOccupation(intention.getId(), "z", edges.get(1), edges.get(1),
+		ResourceOccupation zOcc = new ResourceOccupation(intention.getId(), 0, "z", 2, edges.get(1), edges.get(1),
 				ImmutableCollections.listOf(edges.get(1)), 10);
 		
 		assertThat(gro.getOccupations("x")).containsExactly(xOcc);
@@ -95,14 +106,14 @@ public class GraphResourceOccupationsTest extends GraphTestBase {
 		graph = RouteGraph.build(route);
 		intention = ServiceIntention.newBuilder().build();
 		
-		GraphResourceOccupations gro = GraphResourceOccupations.create(graph, intention);
+		GraphResourceOccupations gro = GraphResourceOccupations.create(graph, intention, 0, resources("x", "y", "z"));
 		
 		Map<Integer, Edge> edges = buildEdgeIndex(graph);
 		
 		Truth.assertThat(gro.getOccupiedResources()).containsExactly("x");
 		
 		assertThat(gro.getOccupations("x")).containsExactly(
-					new ResourceOccupation(intention.getId(), "x", edges.get(1), edges.get(3),
+					new ResourceOccupation(intention.getId(), 0, "x", 0, edges.get(1), edges.get(3),
 							ImmutableCollections.listOf(edges.get(1), edges.get(2), edges.get(3)), 60));
 	}
 	
@@ -110,28 +121,28 @@ public class GraphResourceOccupationsTest extends GraphTestBase {
 	public void testForkedGraph() {
 		buildForkGraph();
 		
-		GraphResourceOccupations gro = GraphResourceOccupations.create(graph, intention);
+		GraphResourceOccupations gro = GraphResourceOccupations.create(graph, intention, 0, resources("x", "y", "z"));
 		
 		Map<Integer, Edge> edges = buildEdgeIndex(graph);
 		
 		Truth.assertThat(gro.getOccupiedResources()).containsExactly("x", "y");
 		
 		assertThat(gro.getOccupations("y")).containsExactly(
-				new ResourceOccupation(intention.getId(), "y", edges.get(2), edges.get(3), 
+				new ResourceOccupation(intention.getId(), 0, "y", 1, edges.get(2), edges.get(3), 
 						ImmutableCollections.listOf(
 								edges.get(2), edges.get(3)), 40));
 		
 		assertThat(gro.getOccupations("x")).containsExactly(
-				new ResourceOccupation(intention.getId(), "x", edges.get(1), edges.get(4), 
+				new ResourceOccupation(intention.getId(), 0, "x", 0, edges.get(1), edges.get(4), 
 						ImmutableCollections.listOf(
 								edges.get(1), edges.get(2), edges.get(3), edges.get(4)), 110),
-				new ResourceOccupation(intention.getId(), "x", edges.get(1), edges.get(3), 
+				new ResourceOccupation(intention.getId(), 0, "x", 0, edges.get(1), edges.get(3), 
 						ImmutableCollections.listOf(
 								edges.get(1), edges.get(2), edges.get(3), edges.get(6)), 50),
-				new ResourceOccupation(intention.getId(), "x", edges.get(2), edges.get(4), 
+				new ResourceOccupation(intention.getId(), 0, "x", 0, edges.get(2), edges.get(4), 
 						ImmutableCollections.listOf(
 								edges.get(5), edges.get(2), edges.get(3), edges.get(4)), 100),
-				new ResourceOccupation(intention.getId(), "x", edges.get(2), edges.get(3), 
+				new ResourceOccupation(intention.getId(), 0, "x", 0, edges.get(2), edges.get(3), 
 						ImmutableCollections.listOf(
 								edges.get(5), edges.get(2), edges.get(3), edges.get(6)), 40));
 	}
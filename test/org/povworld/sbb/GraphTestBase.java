@@ -218,4 +218,32 @@ public class GraphTestBase {
 				.build();
 	}
 
+	/**
+	 * Builds a chain of {@code count} diamonds. The first branch of each diamond is penalized, the
+	 * second one is free. The penalty of a diamond is larger than the sum of the penalties of all
+	 * following ones, so that every combination of branches has a different path penalty.
+	 */
+	protected void buildDiamondChainGraph(int count) {
+		RoutePath.Builder penalized = RoutePath.newBuilder();
+		RoutePath.Builder free = RoutePath.newBuilder();
+		penalized.addRouteSections(section(60, "A", "", "X0"));
+		for (int i = 0; i < count; ++i) {
+			penalized.addRouteSections(section(60, "", "X" + i, "X" + (i + 1)).toBuilder().setPenalty(1 << (count - i)));
+			free.addRouteSections(section(60, "", "X" + i, "X" + (i + 1)));
+		}
+		penalized.addRouteSections(section(60, "B", "X" + count, ""));
+		Route.Builder builder = Route.newBuilder();
+		builder.setId("diamond-chain");
+		builder.addRoutePaths(penalized);
+		builder.addRoutePaths(free);
+		init(builder.build());
+		
+		intention = ServiceIntention.newBuilder()
+				.addSectionRequirements(
+						SectionRequirement.newBuilder().setSectionMarker("A").setEntryEarliest("12:00:00"))
+				.addSectionRequirements(
+						SectionRequirement.newBuilder().setSectionMarker("B").setExitLatest("23:00:00"))
+				.build();
+	}
+
 }
@@ -1,9 +1,15 @@
 package org.povworld.sbb;
 
+import static org.junit.Assert.assertEquals;
+
 import java.io.File;
 import java.io.IOException;
+import java.io.StringReader;
 
 import org.junit.Test;
+import org.povworld.sbb.Input.RouteSection;
+import org.povworld.sbb.Input.Scenario;
+import org.povworld.sbb.Input.SectionRequirement;
 
 public class InputParserTest {
 	@Test
@@ -30,4 +36,40 @@ public class InputParserTest {
 	public void parseInputFile9() throws IOException {
 		InputParser.parseScenario(new File("problem_instances/09_ZUE-ZG-CH_0600-1200.json"));
 	}
+
+	@Test
+	public void parseLenientInput() throws IOException {
+		String json = "{\"label\": \"test\", \"hash\": \"42\", \"unknown\": {\"a\": [1, 2]},"
+				+ " \"service_intentions\": [{\"id\": 111, \"route\": 111, \"section_requirements\": [{"
+				+ "  \"sequence_number\": 1, \"section_marker\": \"A\", \"entry_earliest\": \"08:20:00\","
+				+ "  \"min_stopping_time\": \"PT3M\", \"entryDelayWeight\": 1, \"connections\": null}]}],"
+				+ " \"routes\": [{\"id\": 111, \"route_paths\": [{\"id\": 1, \"route_sections\": [{"
+				+ "  \"sequence_number\": 5, \"route_alternative_marker_at_entry\": [\"M1\"],"
+				+ "  \"section_marker\": [null], \"penalty\": null, \"minimum_running_time\": \"PT53S\","
+				+ "  \"resource_occupations\": [{\"resource\": \"R1\", \"occupation_direction\": null}]}]}]}],"
+				+ " \"resources\": [{\"id\": \"R1\", \"release_time\": \"PT30S\", \"following_allowed\": false}],"
+				+ " \"parameters\": {\"maxBandabweichung\": \"PT1M\"}}";
+		Scenario scenario = InputParser.parseScenario(new StringReader(json));
+
+		assertEquals("test", scenario.getLabel());
+		assertEquals(42, scenario.getHash());
+		assertEquals("111", scenario.getServiceIntentions(0).getId());
+
+		SectionRequirement requirement = scenario.getServiceIntentions(0).getSectionRequirements(0);
+		assertEquals("A", requirement.getSectionMarker());
+		assertEquals("08:20:00", requirement.getEntryEarliest());
+		assertEquals(180, requirement.getMinStoppingTimeSeconds());
+		assertEquals("", requirement.getMinStoppingTime());
+		assertEquals(1.0, requirement.getEntryDelayWeight(), 0);
+		assertEquals(0, requirement.getConnectionsCount());
+
+		RouteSection section = scenario.getRoutes(0).getRoutePaths(0).getRouteSections(0);
+		assertEquals("M1", section.getRouteAlternativeMarkerAtEntry());
+		assertEquals(0, section.getSectionMarkerCount());
+		assertEquals(53, section.getMinimumRunningTimeSeconds());
+		assertEquals("R1", section.getResourceOccupations(0).getResource());
+
+		assertEquals(30, scenario.getResources(0).getReleaseTimeSeconds());
+		assertEquals("PT1M", scenario.getParameters().getMaxBandabweichung());
+	}
 }
@@ -0,0 +1,34 @@
+package org.povworld.sbb;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.BitSet;
+
+import org.junit.Test;
+import org.povworld.collection.common.Interval;
+
+public class IntentionRestrictionQueueTest {
+
+	@Test
+	public void testUnsupportedRestrictionLeavesQueueEmpty() {
+		IntentionRestrictionQueue queue = new IntentionRestrictionQueue();
+		try {
+			queue.add(new IntentionRestriction("i") {
+				@Override
+				public void applyTo(GraphConstraints timeConstraints, BitSet changedNodes) {
+				}
+
+				@Override
+				public Interval getRestrictionInterval() {
+					return null;
+				}
+			});
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertTrue(queue.isEmpty());
+	}
+
+}
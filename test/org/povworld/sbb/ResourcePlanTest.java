@@ -75,18 +75,18 @@ public class ResourcePlanTest {
 	}
 	
 	private static ResourceOccupation ro(String intention, int minDuration) {
-		return new ResourceOccupation(intention, RESOURCE, EDGE_12_15, EDGE_12_15,
+		return new ResourceOccupation(intention, 0, RESOURCE, 0, EDGE_12_15, EDGE_12_15,
 				ImmutableCollections.<Edge>listOf(EDGE_12_15), minDuration);
 	}
 	
 	private final ResourceOccupation OCC_1A_50S = 
-			new ResourceOccupation("i1", RESOURCE, EDGE_12_15, EDGE_12_15, ImmutableCollections.<Edge>listOf(EDGE_12_15), 50);
+			new ResourceOccupation("i1", 0, RESOURCE, 0, EDGE_12_15, EDGE_12_15, ImmutableCollections.<Edge>listOf(EDGE_12_15), 50);
 	private final ResourceOccupation OCC_1B_40S = 
-			new ResourceOccupation("i1", RESOURCE, EDGE_12_16, EDGE_12_16, ImmutableCollections.<Edge>listOf(EDGE_12_16), 40);
+			new ResourceOccupation("i1", 0, RESOURCE, 0, EDGE_12_16, EDGE_12_16, ImmutableCollections.<Edge>listOf(EDGE_12_16), 40);
 	private final ResourceOccupation OCC_1C_40S = 
-			new ResourceOccupation("i1", RESOURCE, EDGE_12_17, EDGE_12_17, ImmutableCollections.<Edge>listOf(EDGE_12_17), 40);
+			new ResourceOccupation("i1", 0, RESOURCE, 0, EDGE_12_17, EDGE_12_17, ImmutableCollections.<Edge>listOf(EDGE_12_17), 40);
 	private final ResourceOccupation OCC_2A_40S = 
-			new ResourceOccupation("i2", RESOURCE, EDGE_12_17, EDGE_12_17, ImmutableCollections.<Edge>listOf(EDGE_12_17), 40);
+			new ResourceOccupation("i2", 1, RESOURCE, 0, EDGE_12_17, EDGE_12_17, ImmutableCollections.<Edge>listOf(EDGE_12_17), 40);
 	
 	private IntentionRestrictionQueue queue = new IntentionRestrictionQueue();
 	
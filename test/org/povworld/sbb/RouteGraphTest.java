@@ -10,11 +10,12 @@ import org.povworld.sbb.Input.Route.Builder;
 import org.povworld.sbb.Input.RoutePath;
 import org.povworld.sbb.Input.RouteSection;
 import org.povworld.sbb.RouteGraph.Edge;
+import org.povworld.sbb.RouteGraph.MarkerEdges;
 
 import com.google.common.truth.Correspondence;
 import com.google.common.truth.Truth;
 
-public class RouteGraphTest {
+public class RouteGraphTest extends GraphTestBase {
 	
 	private static class PathComparator extends Correspondence<Path, Path> {
 		@Override
@@ -243,4 +244,22 @@ public class RouteGraphTest {
 				new Path(7, 0.3, edges(s7, s4, s5, s8)));
 	}
 	
+	@Test
+	public void markerEdges() {
+		buildForkGraph();
+		
+		MarkerEdges m = graph.getMarkerEdges("M");
+		Truth.assertThat(m.edges).asList().containsExactly(edges.get(3));
+		Truth.assertThat(m.previous[0]).asList().containsExactly(edges.get(2));
+		Truth.assertThat(m.next[0]).asList().containsExactly(edges.get(4), edges.get(6));
+		Truth.assertThat(m.allPrevious).containsExactly(edges.get(2));
+		Truth.assertThat(m.allNext).containsExactly(edges.get(4), edges.get(6));
+		
+		MarkerEdges b = graph.getMarkerEdges("B");
+		Truth.assertThat(b.edges).asList().containsExactly(edges.get(4), edges.get(6));
+		Truth.assertThat(b.allPrevious).containsExactly(edges.get(3));
+		
+		Truth.assertThat(graph.getMarkerEdges("unknown").edges).isEmpty();
+	}
+	
 }
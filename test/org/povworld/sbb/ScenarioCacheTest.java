@@ -0,0 +1,55 @@
+package org.povworld.sbb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.povworld.sbb.Input.Scenario;
+
+public class ScenarioCacheTest {
+
+	private static final File INPUT = new File("problem_instances/01_dummy.json");
+
+	private File directory;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("scenario_cache").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void cachedScenarioEqualsParsedScenario() throws IOException {
+		ScenarioCache cache = new ScenarioCache(directory);
+		Scenario parsed = cache.load(INPUT);
+		assertTrue(cache.getCacheFile(INPUT).isFile());
+
+		Scenario cached = new ScenarioCache(directory).load(INPUT);
+		assertEquals(InputParser.parseScenario(INPUT), parsed);
+		assertEquals(parsed, cached);
+	}
+
+	@Test
+	public void corruptCacheFileIsReplaced() throws IOException {
+		ScenarioCache cache = new ScenarioCache(directory);
+		File cacheFile = cache.getCacheFile(INPUT);
+		Files.write(cacheFile.toPath(), new byte[] { 0x0a, 0x7f });
+
+		assertEquals(InputParser.parseScenario(INPUT), cache.load(INPUT));
+		assertEquals(InputParser.parseScenario(INPUT), new ScenarioCache(directory).load(INPUT));
+	}
+
+}
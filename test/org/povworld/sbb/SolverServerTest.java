@@ -0,0 +1,89 @@
+package org.povworld.sbb;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+
+public class SolverServerTest {
+
+	private static final String INPUT = "problem_instances/01_dummy.json";
+
+	private ServerSocket serverSocket;
+	private Thread serverThread;
+
+	@Before
+	public void setUp() throws IOException {
+		serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		SolverServer server = new SolverServer(new Solver.Args(), null);
+		serverThread = new Thread(() -> {
+			try {
+				server.serve(serverSocket);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		});
+		serverThread.start();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		serverSocket.close();
+		serverThread.join();
+	}
+
+	private String send(String request) throws IOException {
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort())) {
+			OutputStream out = socket.getOutputStream();
+			out.write((request + "\n").getBytes(UTF_8));
+			out.flush();
+			return new String(ByteStreams.toByteArray(socket.getInputStream()), UTF_8);
+		}
+	}
+
+	@Test
+	public void solvesRepeatedJobs() throws IOException {
+		String first = send(INPUT + " --director_type PRIORITY_CONFLICT");
+		assertTrue(first, first.startsWith("OK\n"));
+		assertTrue(first, first.contains("\"problem_instance_label\""));
+
+		String second = send(INPUT + " --director_type PRIORITY_CONFLICT");
+		assertEquals(first, second);
+	}
+
+	@Test
+	public void rejectsInvalidJobs() throws IOException {
+		assertTrue(send("").startsWith("ERROR "));
+		assertTrue(send(INPUT + " --unknown").startsWith("ERROR "));
+		assertTrue(send(INPUT + " --connection_badness_factor 2.5").startsWith("ERROR "));
+		assertTrue(send("\"" + INPUT).startsWith("ERROR "));
+	}
+
+	@Test
+	public void rejectsFileAccessOutsideOfJob() throws IOException {
+		assertEquals("ERROR Jobs cannot write output files, the solution is returned instead!\n",
+				send(INPUT + " solution.json"));
+		assertTrue(send(INPUT + " --scenario_cache cache").startsWith("ERROR "));
+		assertTrue(send("../" + INPUT).startsWith("ERROR "));
+	}
+
+	@Test
+	public void splitsQuotedArguments() {
+		assertArrayEquals(new String[] { "a b", "c", "", "d" },
+				SolverServer.splitArguments(" \"a b\"  c \"\" d\t"));
+		assertArrayEquals(new String[] { INPUT }, SolverServer.splitArguments("\"" + INPUT + "\""));
+	}
+
+}
@@ -206,6 +206,118 @@ public class SolverTest extends GraphTestBase {
 				"}"));
 	}
 	
+	@Test
+	public void solveIndependentComponents() throws Exception {
+		ServiceIntention train1 = ServiceIntention.newBuilder()
+				.setId("t1")
+				.setRoute("r1")
+				.addSectionRequirements(SectionRequirement.newBuilder().setEntryEarliest("07:00:00").setExitLatest("08:00:00").setSectionMarker("S1"))
+				.build();
+		ServiceIntention train2 = ServiceIntention.newBuilder()
+				.setId("t2")
+				.setRoute("r2")
+				.addSectionRequirements(SectionRequirement.newBuilder().setEntryEarliest("07:00:00").setExitLatest("08:00:00").setSectionMarker("S1"))
+				.build();
+		ServiceIntention train3 = ServiceIntention.newBuilder()
+				.setId("t3")
+				.setRoute("r1")
+				.addSectionRequirements(SectionRequirement.newBuilder().setEntryEarliest("07:01:00").setExitLatest("08:00:00").setSectionMarker("S1"))
+				.build();
+
+		Route route1 = Route.newBuilder().setId("r1")
+			.addRoutePaths(RoutePath.newBuilder()
+					.addRouteSections(RouteSection.newBuilder()
+						.addSectionMarker("S1")
+						.addResourceOccupations(ResourceOccupations.newBuilder().setResource("R1"))
+						.setSequenceNumber(1)
+						.setMinimumRunningTimeSeconds(120)))
+			.build();
+		Route route2 = Route.newBuilder().setId("r2")
+			.addRoutePaths(RoutePath.newBuilder()
+					.addRouteSections(RouteSection.newBuilder()
+						.addSectionMarker("S1")
+						.addResourceOccupations(ResourceOccupations.newBuilder().setResource("R2"))
+						.setSequenceNumber(1)
+						.setMinimumRunningTimeSeconds(120)))
+			.build();
+
+		Scenario scenario =
+				Scenario.newBuilder()
+					.setLabel("test")
+					.setHash(1)
+					.addServiceIntentions(train1)
+					.addServiceIntentions(train2)
+					.addServiceIntentions(train3)
+					.addRoutes(route1)
+					.addRoutes(route2)
+					.addResources(Resource.newBuilder().setId("R1").setReleaseTimeSeconds(0))
+					.addResources(Resource.newBuilder().setId("R2").setReleaseTimeSeconds(0))
+					.build();
+
+		Problem problem = new Problem(scenario);
+		org.povworld.collection.List<Problem> components = problem.splitComponents();
+		Truth.assertThat(components.size()).isEqualTo(2);
+		Truth.assertThat(components.get(0).getScenario().getServiceIntentionsList()).containsExactly(train1, train3).inOrder();
+		Truth.assertThat(components.get(0).getScenario().getRoutesList()).containsExactly(route1);
+		Truth.assertThat(components.get(0).getResourceCount()).isEqualTo(1);
+		Truth.assertThat(components.get(1).getScenario().getServiceIntentionsList()).containsExactly(train2);
+		Truth.assertThat(components.get(1).getScenario().getRoutesList()).containsExactly(route2);
+		Truth.assertThat(components.get(1).getResourceId(0)).isEqualTo("R2");
+
+		Solution expected = new Solver(problem, 0).solve(DirectorType.HARD_COLLECTING);
+		Truth.assertThat(new Solver(problem, 0).solveComponents(DirectorType.HARD_COLLECTING)).isEqualTo(expected);
+	}
+
+	@Test
+	public void anytimeSearchLowersPenalty() throws Exception {
+		ServiceIntention train1 = ServiceIntention.newBuilder()
+				.setId("t1")
+				.setRoute("r1")
+				.addSectionRequirements(SectionRequirement.newBuilder()
+						.setSectionMarker("S1")
+						.setEntryEarliest("07:00:00")
+						.setExitLatest("07:05:00")
+						.setExitDelayWeight(1))
+				.build();
+		ServiceIntention train2 = ServiceIntention.newBuilder()
+				.setId("t2")
+				.setRoute("r1")
+				.addSectionRequirements(SectionRequirement.newBuilder()
+						.setSectionMarker("S1")
+						.setEntryEarliest("07:01:00")
+						.setExitLatest("07:10:00")
+						.setExitDelayWeight(1))
+				.build();
+
+		Route route1 = Route.newBuilder().setId("r1")
+			.addRoutePaths(RoutePath.newBuilder()
+					.addRouteSections(RouteSection.newBuilder()
+						.addSectionMarker("S1")
+						.addResourceOccupations(ResourceOccupations.newBuilder().setResource("R1"))
+						.setSequenceNumber(1)
+						.setMinimumRunningTimeSeconds(180)))
+			.build();
+
+		Scenario scenario =
+				Scenario.newBuilder()
+					.setLabel("test")
+					.setHash(1)
+					.addServiceIntentions(train1)
+					.addServiceIntentions(train2)
+					.addRoutes(route1)
+					.addResources(Resource.newBuilder().setId("R1").setReleaseTimeSeconds(0))
+					.build();
+
+		Problem problem = new Problem(scenario);
+		Solution solution = new Solver(problem, 10).solveAnytime(DirectorType.HARD_COLLECTING, 60);
+		// Both trains fit without delay, although the first search may delay t2 within the bound.
+		Truth.assertThat(solution.getTrainRunsCount()).isEqualTo(2);
+		Truth.assertThat(TimeUtil.parseTime(solution.getTrainRuns(0).getTrainRunSections(0).getExitTime()))
+				.isAtMost(TimeUtil.parseTime("07:05:00"));
+		Truth.assertThat(TimeUtil.parseTime(solution.getTrainRuns(1).getTrainRunSections(0).getExitTime()))
+				.isAtMost(TimeUtil.parseTime("07:10:00"));
+	}
+
 	@Test
 	public void twoTrainsOnSlowFastPathGraph() throws Exception {
 		Route.Builder route1 = Route.newBuilder();